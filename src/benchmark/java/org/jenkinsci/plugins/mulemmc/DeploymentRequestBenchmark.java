@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSON generation of the {@code POST /deployments} body built by {@code restfullyCreateDeployment}
+ * (many servers) and {@code restfullyCreateClusterDeploymentById} (one cluster).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeploymentRequestBenchmark
+{
+	/** Number of servers of the server group deployment and of application versions of both deployments */
+	@Param({ "10", "1000", "50000" })
+	public int entries;
+
+	private List<String> serverIds;
+	private List<String> clusterIds;
+	private List<String> versionIds;
+
+	@Setup
+	public void createIds()
+	{
+		serverIds = new ArrayList<String>(entries);
+		versionIds = new ArrayList<String>(entries);
+		for (int i = 0; i < entries; i++)
+		{
+			serverIds.add("local$server-" + i);
+			versionIds.add("local$app-" + i + "-0");
+		}
+		clusterIds = Collections.singletonList("local$cluster-0");
+	}
+
+	@Benchmark
+	public String serverGroupDeployment() throws IOException
+	{
+		return MuleRest.deploymentRequest("deployment", "servers", serverIds, versionIds);
+	}
+
+	@Benchmark
+	public String clusterDeployment() throws IOException
+	{
+		return MuleRest.deploymentRequest("deployment", "clusters", clusterIds, versionIds);
+	}
+}
@@ -0,0 +1,156 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing and lookup of the listings behind {@code restfullyGetServers}, {@code restfullyGetApplicationId}
+ * and {@code restfullyGetClusterId}. The looked up entry is the last one of the listing, the worst case of
+ * the early-exit scans. The {@code treeModel*} benchmarks read the whole document with
+ * {@link ObjectMapper#readTree} as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MmcJsonScannerBenchmark
+{
+	private static final int GROUPS = 10;
+	private static final int VERSIONS_PER_APPLICATION = 5;
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	/** Number of servers, clusters or application versions in the listing */
+	@Param({ "10", "1000", "50000" })
+	public int entries;
+
+	private byte[] servers;
+	private byte[] clusters;
+	private byte[] repository;
+	private String lastGroup;
+	private String lastCluster;
+	private String lastApplication;
+	private String lastVersion;
+	private MmcRepositoryIndex repositoryIndex;
+
+	@Setup
+	public void createPayloads() throws IOException
+	{
+		int applications = Math.max(1, entries / VERSIONS_PER_APPLICATION);
+		servers = MmcPayloads.servers(entries, GROUPS);
+		clusters = MmcPayloads.named("cluster", entries);
+		repository = MmcPayloads.repository(applications, VERSIONS_PER_APPLICATION);
+		lastGroup = "group-" + ((entries - 1) % GROUPS);
+		lastCluster = "cluster-" + (entries - 1);
+		lastApplication = "app-" + (applications - 1);
+		lastVersion = "1.0." + (VERSIONS_PER_APPLICATION - 1);
+		repositoryIndex = new MmcRepositoryIndex(MmcJsonScanner.indexApplicationVersions(new ByteArrayInputStream(repository)));
+	}
+
+	@Benchmark
+	public Set<String> findServersInGroup() throws IOException
+	{
+		return MmcJsonScanner.findServersInGroup(new ByteArrayInputStream(servers), lastGroup);
+	}
+
+	@Benchmark
+	public Map<String, Set<String>> indexServersByGroup() throws IOException
+	{
+		return MmcJsonScanner.indexServersByGroup(new ByteArrayInputStream(servers));
+	}
+
+	@Benchmark
+	public Set<String> treeModelFindServersInGroup() throws IOException
+	{
+		Set<String> serverIds = new TreeSet<String>();
+		for (JsonNode serverNode : OBJECT_MAPPER.readTree(new ByteArrayInputStream(servers)).path("data"))
+		{
+			for (JsonNode groupNode : serverNode.path("groups"))
+			{
+				if (lastGroup.equals(groupNode.path("name").asText()))
+				{
+					serverIds.add(serverNode.path("id").asText());
+				}
+			}
+		}
+		return serverIds;
+	}
+
+	@Benchmark
+	public String findClusterId() throws IOException
+	{
+		return MmcJsonScanner.findIdByName(new ByteArrayInputStream(clusters), lastCluster);
+	}
+
+	@Benchmark
+	public Map<String, String> indexClusterIds() throws IOException
+	{
+		return MmcJsonScanner.indexIdsByName(new ByteArrayInputStream(clusters));
+	}
+
+	@Benchmark
+	public String treeModelFindClusterId() throws IOException
+	{
+		for (JsonNode clusterNode : OBJECT_MAPPER.readTree(new ByteArrayInputStream(clusters)).path("data"))
+		{
+			if (lastCluster.equals(clusterNode.path("name").asText())) { return clusterNode.path("id").asText(); }
+		}
+		return null;
+	}
+
+	@Benchmark
+	public String findApplicationVersionId() throws IOException
+	{
+		// what restfullyGetApplicationId costs when the repository index is loaded
+		return MmcJsonScanner.indexApplicationVersions(new ByteArrayInputStream(repository)).get(lastApplication).get(lastVersion);
+	}
+
+	@Benchmark
+	public Map<String, Map<String, String>> indexApplicationVersions() throws IOException
+	{
+		return MmcJsonScanner.indexApplicationVersions(new ByteArrayInputStream(repository));
+	}
+
+	@Benchmark
+	public String repositoryIndexLookup()
+	{
+		// what restfullyGetApplicationId costs while the repository index is cached
+		return repositoryIndex.getVersionId(lastApplication, lastVersion);
+	}
+
+	@Benchmark
+	public String treeModelFindApplicationVersionId() throws IOException
+	{
+		for (JsonNode applicationNode : OBJECT_MAPPER.readTree(new ByteArrayInputStream(repository)).path("data"))
+		{
+			if (lastApplication.equals(applicationNode.path("name").asText()))
+			{
+				for (JsonNode versionNode : applicationNode.path("versions"))
+				{
+					if (lastVersion.equals(versionNode.path("name").asText())) { return versionNode.path("id").asText(); }
+				}
+			}
+		}
+		return null;
+	}
+}
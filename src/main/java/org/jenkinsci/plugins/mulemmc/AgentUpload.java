@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.FilePath;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.net.URL;
+
+import jenkins.MasterToSlaveFileCallable;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.SimpleHttpConnectionManager;
+
+/**
+ * Uploads an archive to the MMC repository from the build agent that holds it.
+ * <p>
+ * Only the digest of the archive and the resulting version id cross the remoting channel: the
+ * archive itself goes straight from the agent to MMC and never passes through the master.
+ * Lookups, the SNAPSHOT delete and the upload ledger stay on the master.
+ */
+final class AgentUpload
+{
+	private AgentUpload() {
+	}
+
+	/**
+	 * @param progress receives the outcome of the upload, its progress lines are written to the log by the agent
+	 * @return the version id of the uploaded or reused archive
+	 */
+	static String upload(MuleRest muleRest, FilePath archive, String name, String version, PrintStream logger, UploadProgress progress)
+	        throws Exception
+	{
+		String digest = muleRest.getUploadLedger() != null ? archive.act(new DigestCallable()) : null;
+
+		String versionId = muleRest.prepareUpload(name, version, digest);
+		if (versionId != null) { return versionId; }
+
+		// the upload slot is held on the master, where the limits of all jobs are known
+		MmcAdmission.Permit permit = muleRest.admit(true);
+		// the agent records the call in its own JVM, record it for the master as well
+		long started = System.currentTimeMillis();
+		UploadResult result;
+		try
+		{
+			result = archive.act(new PostCallable(muleRest.getMmcUrl(), muleRest.getUsername(), muleRest.getPassword(), name, version,
+			        muleRest.isChunkedUpload(), new RemoteOutputStream(logger)));
+		} catch (Exception e)
+		{
+			muleRest.recordCall("POST /repository", System.currentTimeMillis() - started, true, 0);
+			throw e;
+		} finally
+		{
+			permit.release();
+		}
+		muleRest.recordCall("POST /repository", System.currentTimeMillis() - started, false, result.bytesSent);
+		progress.setResult(result.bytesSent, result.elapsedMillis);
+		return muleRest.completeUpload(name, version, digest, result.versionId);
+	}
+
+	private static final class UploadResult implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final String versionId;
+		private final long bytesSent;
+		private final long elapsedMillis;
+
+		UploadResult(String versionId, long bytesSent, long elapsedMillis) {
+			this.versionId = versionId;
+			this.bytesSent = bytesSent;
+			this.elapsedMillis = elapsedMillis;
+		}
+	}
+
+	private static final class DigestCallable extends MasterToSlaveFileCallable<String>
+	{
+		private static final long serialVersionUID = 1L;
+
+		public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException
+		{
+			return UploadLedger.sha256(f);
+		}
+	}
+
+	private static final class PostCallable extends MasterToSlaveFileCallable<UploadResult>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final URL mmcUrl;
+		private final String user;
+		private final String password;
+		private final String name;
+		private final String version;
+		private final boolean chunked;
+		private final OutputStream log;
+
+		PostCallable(URL mmcUrl, String user, String password, String name, String version, boolean chunked, OutputStream log) {
+			this.mmcUrl = mmcUrl;
+			this.user = user;
+			this.password = password;
+			this.name = name;
+			this.version = version;
+			this.chunked = chunked;
+			this.log = log;
+		}
+
+		public UploadResult invoke(File f, VirtualChannel channel) throws IOException, InterruptedException
+		{
+			// a client of its own, shut down afterwards: the agent keeps no pools, caches or settings of MMC
+			SimpleHttpConnectionManager connectionManager = new SimpleHttpConnectionManager();
+			try
+			{
+				HttpClient httpClient = MmcConnectionRegistry.createHttpClient(mmcUrl, user, password, connectionManager);
+				UploadProgress progress = new UploadProgress(new PrintStream(log, true));
+				String versionId = MuleRest.postRepository(httpClient, mmcUrl, name, version, f, chunked, progress);
+				return new UploadResult(versionId, progress.getBytesSent(), progress.getElapsedMillis());
+			} catch (IOException e)
+			{
+				throw e;
+			} catch (InterruptedException e)
+			{
+				throw e;
+			} catch (Exception e)
+			{
+				throw new IOException("Upload of " + f + " to " + mmcUrl + " failed: " + e.getMessage(), e);
+			} finally
+			{
+				connectionManager.shutdown();
+			}
+		}
+	}
+}
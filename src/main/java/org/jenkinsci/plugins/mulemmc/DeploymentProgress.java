@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.XmlFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What a deployment already did on each of its targets: the id of the deployment it created, whether it
+ * activated it and whether it completed. Written to a file after every change when one is given, so a
+ * deployment interrupted by a restart can re-attach to its deployments instead of creating them again.
+ */
+final class DeploymentProgress
+{
+	private static final Logger logger = Logger.getLogger(DeploymentProgress.class.getName());
+
+	/** Key of a deployment without a target name */
+	private static final String NO_TARGET = "";
+
+	private String versionId;
+	private final Map<String, String> deploymentIds = new HashMap<String, String>();
+	private final Set<String> activated = new HashSet<String>();
+	private final Set<String> completed = new HashSet<String>();
+
+	private transient XmlFile file;
+
+	/**
+	 * @return the progress stored in the file, or a new progress writing to it
+	 */
+	static DeploymentProgress load(File file)
+	{
+		XmlFile xmlFile = new XmlFile(file);
+		DeploymentProgress progress = null;
+		if (xmlFile.exists())
+		{
+			try
+			{
+				progress = (DeploymentProgress) xmlFile.read();
+			} catch (IOException e)
+			{
+				logger.log(Level.WARNING, "Ignoring unreadable deployment progress " + file, e);
+			}
+		}
+		if (progress == null)
+		{
+			progress = new DeploymentProgress();
+		}
+		progress.file = xmlFile;
+		return progress;
+	}
+
+	/**
+	 * @return the version id being deployed, null before the upload finished
+	 */
+	synchronized String getVersionId()
+	{
+		return versionId;
+	}
+
+	synchronized void uploaded(String versionId)
+	{
+		this.versionId = versionId;
+		save();
+	}
+
+	synchronized String getDeploymentId(String target)
+	{
+		return deploymentIds.get(keyOf(target));
+	}
+
+	synchronized void created(String target, String deploymentId)
+	{
+		deploymentIds.put(keyOf(target), deploymentId);
+		save();
+	}
+
+	synchronized boolean isActivated(String target)
+	{
+		return activated.contains(keyOf(target));
+	}
+
+	synchronized void activated(String target)
+	{
+		activated.add(keyOf(target));
+		save();
+	}
+
+	synchronized boolean isCompleted(String target)
+	{
+		return completed.contains(keyOf(target));
+	}
+
+	synchronized void completed(String target)
+	{
+		completed.add(keyOf(target));
+		save();
+	}
+
+	/**
+	 * Removes the file once the deployment is over.
+	 */
+	synchronized void delete()
+	{
+		if (file != null)
+		{
+			file.getFile().delete();
+		}
+	}
+
+	private static String keyOf(String target)
+	{
+		return target != null ? target : NO_TARGET;
+	}
+
+	private void save()
+	{
+		if (file == null) { return; }
+		try
+		{
+			file.write(this);
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "Failed to save deployment progress " + file, e);
+		}
+	}
+}
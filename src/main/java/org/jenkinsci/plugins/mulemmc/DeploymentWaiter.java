@@ -0,0 +1,120 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Waits until a deployment activated in MMC has reached a terminal state on every target.
+ * <p>
+ * The deployment status is polled with adaptive backoff: the first polls follow each other
+ * quickly, then the delay doubles up to a ceiling. Every target server or cluster is polled for the
+ * status of the deployed application versions, so the build log shows when each of them was ready.
+ * Where MMC does not report which version of an application runs, the deployment status decides alone,
+ * since the previous version is started on the target from the start.
+ */
+final class DeploymentWaiter
+{
+	static final long INITIAL_DELAY_MILLIS = 500;
+	static final long MAX_DELAY_MILLIS = 10000;
+
+	private final MuleRest muleRest;
+	private final PrintStream logger;
+	private final long timeoutMillis;
+
+	DeploymentWaiter(MuleRest muleRest, PrintStream logger, long timeoutMillis) {
+		this.muleRest = muleRest;
+		this.logger = logger;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * @param applicationNames names of the applications of the deployment
+	 * @return true if the deployment succeeded on all targets, false if it failed or timed out
+	 */
+	boolean await(String deploymentId, Collection<String> applicationNames) throws Exception
+	{
+		long start = System.currentTimeMillis();
+		long delay = INITIAL_DELAY_MILLIS;
+
+		MmcDeployment deployment = muleRest.restfullyGetDeployment(deploymentId);
+		// target path to the time it completed, null while pending
+		Map<String, Long> targets = new LinkedHashMap<String, Long>();
+		for (String serverId : deployment.getServers())
+		{
+			targets.put("/servers/" + serverId, null);
+		}
+		for (String clusterId : deployment.getClusters())
+		{
+			targets.put("/clusters/" + clusterId, null);
+		}
+		boolean trackTargets = true;
+
+		logger.println("....waiting for deployment " + deployment.getName() + " on " + targets.size() + " target(s)");
+		while (true)
+		{
+			long elapsed = System.currentTimeMillis() - start;
+
+			if (trackTargets)
+			{
+				try
+				{
+					for (Map.Entry<String, Long> target : targets.entrySet())
+					{
+						if (target.getValue() != null)
+						{
+							continue;
+						}
+						String status = muleRest.restfullyGetApplicationsStatus(target.getKey(), applicationNames, deployment.getApplications());
+						if (isStarted(status))
+						{
+							target.setValue(elapsed);
+							logger.println("....ready on " + target.getKey() + " after " + seconds(elapsed));
+						} else if (status != null && status.toUpperCase().contains("FAIL"))
+						{
+							logger.println("....failed on " + target.getKey() + " after " + seconds(elapsed) + ": " + status);
+							return false;
+						}
+					}
+				} catch (Exception e)
+				{
+					logger.println("....per-target status unavailable, waiting on the deployment status only: " + e.getMessage());
+					trackTargets = false;
+				}
+			}
+
+			deployment = muleRest.restfullyGetDeployment(deploymentId);
+			if (deployment.isFailed())
+			{
+				logger.println("....deployment " + deployment.getName() + " failed after " + seconds(elapsed) + ": " + deployment.getStatus());
+				return false;
+			}
+			if (deployment.isDeployed() && (!trackTargets || !targets.containsValue(null)))
+			{
+				logger.println("....deployment " + deployment.getName() + " completed on all targets after " + seconds(elapsed));
+				return true;
+			}
+
+			long remaining = timeoutMillis - (System.currentTimeMillis() - start);
+			if (remaining <= 0)
+			{
+				logger.println("....gave up waiting for deployment " + deployment.getName() + " after " + seconds(timeoutMillis) + ", status "
+				        + deployment.getStatus());
+				return false;
+			}
+			Thread.sleep(Math.min(delay, remaining));
+			delay = Math.min(delay * 2, MAX_DELAY_MILLIS);
+		}
+	}
+
+	private static boolean isStarted(String status)
+	{
+		return "STARTED".equalsIgnoreCase(status) || "DEPLOYED".equalsIgnoreCase(status);
+	}
+
+	private static String seconds(long millis)
+	{
+		return String.format("%.1fs", millis / 1000.0);
+	}
+}
@@ -0,0 +1,253 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.Extension;
+
+import java.io.Serializable;
+
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Pipeline step {@code mmcDeploy} uploading an archive to MMC and deploying it, like {@link MMCDeployerBuilder}.
+ * <p>
+ * The work runs off the CPS thread, see {@link MMCDeployStepExecution}. Only the upload needs a workspace:
+ * without {@code file} the step deploys a version already in the MMC repository and can run outside of
+ * {@code node}, so waiting for MMC does not hold an executor:
+ * 
+ * <pre>
+ * node { mmcDeploy mmcUrl: url, user: u, password: p, name: 'app', version: v, file: 'target/app.zip' }
+ * mmcDeploy mmcUrl: url, user: u, password: p, name: 'app', version: v, targets: 'group-a, group-b', waitForCompletion: true
+ * </pre>
+ */
+public class MMCDeployStep extends AbstractStepImpl implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final String mmcUrl;
+	private final String user;
+	private final String password;
+	private final String name;
+	private final String version;
+	private String file;
+	private String targets;
+	private String deploymentName;
+	private boolean clusterDeploy;
+	private boolean deploy = true;
+	private boolean waitForCompletion;
+	private int waitTimeout = MmcDeployer.DEFAULT_WAIT_TIMEOUT;
+	private int maxConcurrentTargets = MmcDeployer.DEFAULT_MAX_CONCURRENT_TARGETS;
+	private boolean skipUnchangedUploads;
+	private boolean chunkedUpload;
+	private String rollingBatchSize;
+	private boolean swapDeployment;
+
+	@DataBoundConstructor
+	public MMCDeployStep(String mmcUrl, String user, String password, String name, String version) {
+		this.mmcUrl = mmcUrl;
+		this.user = user;
+		this.password = password;
+		this.name = name;
+		this.version = version;
+	}
+
+	public String getMmcUrl()
+	{
+		return mmcUrl;
+	}
+
+	public String getUser()
+	{
+		return user;
+	}
+
+	public String getPassword()
+	{
+		return password;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getVersion()
+	{
+		return version;
+	}
+
+	public String getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * @param file archive relative to the workspace, uploaded before deploying
+	 */
+	@DataBoundSetter
+	public void setFile(String file)
+	{
+		this.file = file;
+	}
+
+	public String getTargets()
+	{
+		return targets;
+	}
+
+	/**
+	 * @param targets comma separated server groups or clusters, nothing is deployed without
+	 */
+	@DataBoundSetter
+	public void setTargets(String targets)
+	{
+		this.targets = targets;
+	}
+
+	public String getDeploymentName()
+	{
+		return deploymentName;
+	}
+
+	/**
+	 * @param deploymentName defaults to the application name
+	 */
+	@DataBoundSetter
+	public void setDeploymentName(String deploymentName)
+	{
+		this.deploymentName = deploymentName;
+	}
+
+	public boolean isClusterDeploy()
+	{
+		return clusterDeploy;
+	}
+
+	@DataBoundSetter
+	public void setClusterDeploy(boolean clusterDeploy)
+	{
+		this.clusterDeploy = clusterDeploy;
+	}
+
+	public boolean isDeploy()
+	{
+		return deploy;
+	}
+
+	/**
+	 * @param deploy whether the created deployments are activated
+	 */
+	@DataBoundSetter
+	public void setDeploy(boolean deploy)
+	{
+		this.deploy = deploy;
+	}
+
+	public boolean isWaitForCompletion()
+	{
+		return waitForCompletion;
+	}
+
+	@DataBoundSetter
+	public void setWaitForCompletion(boolean waitForCompletion)
+	{
+		this.waitForCompletion = waitForCompletion;
+	}
+
+	public int getWaitTimeout()
+	{
+		return waitTimeout;
+	}
+
+	@DataBoundSetter
+	public void setWaitTimeout(int waitTimeout)
+	{
+		this.waitTimeout = waitTimeout;
+	}
+
+	public int getMaxConcurrentTargets()
+	{
+		return maxConcurrentTargets;
+	}
+
+	@DataBoundSetter
+	public void setMaxConcurrentTargets(int maxConcurrentTargets)
+	{
+		this.maxConcurrentTargets = maxConcurrentTargets;
+	}
+
+	public boolean isSkipUnchangedUploads()
+	{
+		return skipUnchangedUploads;
+	}
+
+	/**
+	 * @param skipUnchangedUploads reuse the version uploaded last time when the archive has the same digest
+	 */
+	@DataBoundSetter
+	public void setSkipUnchangedUploads(boolean skipUnchangedUploads)
+	{
+		this.skipUnchangedUploads = skipUnchangedUploads;
+	}
+
+	public boolean isChunkedUpload()
+	{
+		return chunkedUpload;
+	}
+
+	@DataBoundSetter
+	public void setChunkedUpload(boolean chunkedUpload)
+	{
+		this.chunkedUpload = chunkedUpload;
+	}
+
+	public String getRollingBatchSize()
+	{
+		return rollingBatchSize;
+	}
+
+	/**
+	 * @param rollingBatchSize servers per batch or a percentage such as {@code 25%}, all servers at once when empty
+	 */
+	@DataBoundSetter
+	public void setRollingBatchSize(String rollingBatchSize)
+	{
+		this.rollingBatchSize = rollingBatchSize;
+	}
+
+	public boolean isSwapDeployment()
+	{
+		return swapDeployment;
+	}
+
+	/**
+	 * @param swapDeployment activate the new deployment under a temporary name and keep the old one until it
+	 *        completed, re-activating the old one if it fails
+	 */
+	@DataBoundSetter
+	public void setSwapDeployment(boolean swapDeployment)
+	{
+		this.swapDeployment = swapDeployment;
+	}
+
+	@Extension(optional = true)
+	public static final class DescriptorImpl extends AbstractStepDescriptorImpl
+	{
+		public DescriptorImpl() {
+			super(MMCDeployStepExecution.class);
+		}
+
+		@Override
+		public String getFunctionName()
+		{
+			return "mmcDeploy";
+		}
+
+		@Override
+		public String getDisplayName()
+		{
+			return "Deploy to Mule Management Console";
+		}
+	}
+}
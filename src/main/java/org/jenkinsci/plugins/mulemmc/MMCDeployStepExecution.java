@@ -0,0 +1,160 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.Computer;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+import jenkins.model.Jenkins;
+
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+
+import com.google.inject.Inject;
+
+/**
+ * Runs {@link MMCDeployStep} on a background thread so neither the CPS thread nor, outside of {@code node},
+ * an executor is blocked while MMC uploads, deploys and starts the applications.
+ * <p>
+ * The uploaded version and the created deployments are recorded in a {@link DeploymentProgress} file in the
+ * build directory. After a restart the step runs again and re-attaches to the recorded deployments instead
+ * of creating them a second time.
+ */
+public class MMCDeployStepExecution extends AbstractStepExecutionImpl
+{
+	private static final long serialVersionUID = 1L;
+
+	@Inject(optional = true)
+	private transient MMCDeployStep injectedStep;
+
+	private MMCDeployStep step;
+
+	/** Names the progress file of this execution in the build directory */
+	private String progressId;
+
+	private transient volatile Future<?> task;
+
+	@Override
+	public boolean start() throws Exception
+	{
+		step = injectedStep;
+		progressId = UUID.randomUUID().toString();
+		submit();
+		return false;
+	}
+
+	@Override
+	public void stop(Throwable cause) throws Exception
+	{
+		Future<?> running = task;
+		if (running != null)
+		{
+			running.cancel(true);
+		}
+		getContext().onFailure(cause);
+	}
+
+	@Override
+	public void onResume()
+	{
+		super.onResume();
+		submit();
+	}
+
+	private void submit()
+	{
+		task = Computer.threadPoolForRemoting.submit(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					getContext().onSuccess(deploy());
+				} catch (Throwable t)
+				{
+					getContext().onFailure(t);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the version id of the deployed archive
+	 */
+	private String deploy() throws Exception
+	{
+		Run<?, ?> run = getContext().get(Run.class);
+		PrintStream logger = getContext().get(TaskListener.class).getLogger();
+		DeploymentProgress progress = DeploymentProgress.load(new File(run.getRootDir(), "mmc-deployment-" + progressId + ".xml"));
+
+		MuleRest muleRest = new MuleRest(new URL(step.getMmcUrl()), step.getUser(), step.getPassword());
+		if (step.isSkipUnchangedUploads())
+		{
+			muleRest.setUploadLedger(Jenkins.getInstance().getDescriptorByType(MMCDeployerBuilder.DescriptorImpl.class).getUploadLedger());
+		}
+		muleRest.setChunkedUpload(step.isChunkedUpload());
+		MmcMetricsAction metricsAction = run.getAction(MmcMetricsAction.class);
+		if (metricsAction == null)
+		{
+			metricsAction = new MmcMetricsAction();
+			run.addAction(metricsAction);
+		}
+		muleRest.setBuildMetrics(metricsAction.forMmc(muleRest.getMmcUrl()));
+		UploadThroughputAction throughput = run.getAction(UploadThroughputAction.class);
+		if (throughput == null)
+		{
+			throughput = new UploadThroughputAction();
+			run.addAction(throughput);
+		}
+
+		MmcDeployer deployer = new MmcDeployer(muleRest, throughput);
+		deployer.setClusterDeploy(step.isClusterDeploy());
+		deployer.setCompleteDeployment(step.isDeploy());
+		deployer.setUploadFromAgent(true);
+		deployer.setWaitForCompletion(step.isWaitForCompletion());
+		deployer.setWaitTimeout(step.getWaitTimeout());
+		deployer.setMaxConcurrentTargets(step.getMaxConcurrentTargets());
+		deployer.setRollingBatchSize(step.getRollingBatchSize());
+		deployer.setSwapDeployment(step.isSwapDeployment());
+
+		String deploymentName = step.getDeploymentName() != null && step.getDeploymentName().length() > 0 ? step.getDeploymentName() : step
+		        .getName();
+		Map<String, Future<MmcDeploymentTarget>> resolved = null;
+		String versionId = progress.getVersionId();
+		if (versionId != null)
+		{
+			logger.println("....resuming deployment of " + step.getName() + " " + step.getVersion());
+		} else if (step.getFile() != null && step.getFile().length() > 0)
+		{
+			FilePath workspace = getContext().get(FilePath.class);
+			if (workspace == null) { throw new AbortException("mmcDeploy with a file has to run inside node"); }
+			// the targets and their existing deployments are resolved while the archive is uploaded
+			resolved = deployer.resolveTargets(step.getTargets(), deploymentName);
+			versionId = deployer.upload(logger, workspace.child(step.getFile()), step.getName(), step.getVersion());
+			progress.uploaded(versionId);
+		} else
+		{
+			versionId = muleRest.restfullyGetApplicationId(step.getName(), step.getVersion());
+			if (versionId == null) { throw new AbortException(step.getName() + " " + step.getVersion() + " is not in the MMC repository"); }
+			progress.uploaded(versionId);
+		}
+
+		if (!MmcDeployer.targetsOf(step.getTargets()).isEmpty())
+		{
+			deployer.deploy(logger, step.getTargets(), deploymentName, Collections.singletonList(versionId), Collections.singletonList(step.getName()),
+			        progress, resolved);
+		}
+		deployer.logQueueWait(logger);
+		progress.delete();
+		run.save();
+		return versionId;
+	}
+}
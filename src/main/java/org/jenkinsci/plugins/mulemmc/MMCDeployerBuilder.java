@@ -13,26 +13,40 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.servlet.ServletException;
 
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthPolicy;
-import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.SimpleHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
 
 public class MMCDeployerBuilder extends Builder
 {
+	private static final int DEFAULT_MAX_CONCURRENT_DEPLOYMENTS = 4;
 
 	public final String mmcUrl;
 	public final String user;
@@ -44,6 +58,19 @@ public class MMCDeployerBuilder extends Builder
 	public final boolean completeDeployment;
 	public final String clusterOrServerGroupName;
 	public final boolean deployWithPomDetails;
+	private boolean refreshTopologyCache;
+	private boolean parallelDeployment;
+	private int maxConcurrentDeployments;
+	private boolean uploadFromAgent;
+	private boolean skipUnchangedUploads;
+	private boolean chunkedUpload;
+	private boolean waitForCompletion;
+	private int waitTimeout;
+	private boolean batchDeployment;
+	private String batchDeploymentName;
+	private int maxConcurrentTargets;
+	private String rollingBatchSize;
+	private boolean swapDeployment;
 
 	@DataBoundConstructor
 	public MMCDeployerBuilder(String mmcUrl, String user, String password, boolean clusterDeploy, boolean completeDeployment, String clusterOrServerGroupName,
@@ -65,6 +92,15 @@ public class MMCDeployerBuilder extends Builder
 	{
 		boolean success = false;
 		EnvVars envVars = new EnvVars();
+		UploadThroughputAction throughput = new UploadThroughputAction();
+		MmcMetricsAction metricsAction = build.getAction(MmcMetricsAction.class);
+		boolean newMetricsAction = metricsAction == null;
+		if (newMetricsAction)
+		{
+			metricsAction = new MmcMetricsAction();
+		}
+		DeploymentBatch batch = batchDeployment ? new DeploymentBatch() : null;
+		MmcDeployer deployer = null;
 
 		listener.getLogger().println(">>> MMC URL IS " + mmcUrl);
 		listener.getLogger().println(">>> USER IS " + user);
@@ -80,10 +116,32 @@ public class MMCDeployerBuilder extends Builder
 
 			// aFile = getFile(workspace, fileLocation);
 			MuleRest muleRest = new MuleRest(new URL(mmcUrl), user, password);
+			if (skipUnchangedUploads)
+			{
+				muleRest.setUploadLedger(getDescriptor().getUploadLedger());
+			}
+			muleRest.setChunkedUpload(chunkedUpload);
+			muleRest.setBuildMetrics(metricsAction.forMmc(muleRest.getMmcUrl()));
+			if (refreshTopologyCache)
+			{
+				listener.getLogger().println(">>> Refreshing cached MMC topology");
+				muleRest.refreshTopology();
+			}
+			deployer = newDeployer(muleRest, throughput);
+			String deploymentName = null;
+			Map<String, Future<MmcDeploymentTarget>> batchTargets = null;
+			if (batch != null)
+			{
+				deploymentName = batchDeploymentName != null && batchDeploymentName.length() > 0 ? hudson.Util.replaceMacro(batchDeploymentName,
+				        envVars) : build.getParent().getName();
+				// the batch deployment target is resolved while the artifacts are uploaded
+				batchTargets = deployer.resolveTargets(hudson.Util.replaceMacro(clusterOrServerGroupName, envVars), deploymentName);
+			}
 
 			if (build instanceof MavenModuleSetBuild)
 			{
 				listener.getLogger().println("doing maven deloy based on maven artifact details in POM");
+				List<ArtifactDeployment> deployments = new ArrayList<ArtifactDeployment>();
 				for (final List<MavenBuild> mavenBuilds : ((MavenModuleSetBuild) build).getModuleBuilds().values())
 				{
 					for (final MavenBuild mavenBuild : mavenBuilds)
@@ -101,17 +159,19 @@ public class MMCDeployerBuilder extends Builder
 								listener.getLogger().println(">>>>>>>>>>>> ARTIFACT ID: " + nextAttached.artifactId);
 								listener.getLogger().println(">>>>>>>>>>>> VERSION: " + nextAttached.version);
 								listener.getLogger().println(">>>>>>>>>>>> FILE: " + nextAttached.getFile(mavenBuild).getAbsolutePath());
-								doDeploy(listener, 
-										muleRest, 
-										nextAttached.getFile(mavenBuild), 
+								deployments.add(new ArtifactDeployment(
+										new PrefixedPrintStream(listener.getLogger(), "[" + nextAttached.artifactId + "] "), 
+										deployer, 
+										batch, 
+										new FilePath(nextAttached.getFile(mavenBuild)), 
 										hudson.Util.replaceMacro(clusterOrServerGroupName, envVars), 
 										nextAttached.version,
-								        nextAttached.artifactId);
-								success = true;
+								        nextAttached.artifactId));
 							}
 						}
 					}
 				}
+				success = deployArtifacts(listener.getLogger(), deployments);
 			} else
 			{
 				listener.getLogger().println("doing freestyle project deloy - using plugin configuration");
@@ -125,9 +185,10 @@ public class MMCDeployerBuilder extends Builder
 						listener.getLogger().println(">>>>>>>>>>>> FILE: "+ file.getRemote());
 						listener.getLogger().println(">>>>>>>>>>>> SERVER: " +hudson.Util.replaceMacro(clusterOrServerGroupName, envVars));
 						
-						doDeploy(listener, 
-								muleRest, 
-								new File(file.getRemote()), 
+						doDeploy(listener.getLogger(), 
+								deployer, 
+								batch, 
+								file, 
 								hudson.Util.replaceMacro(clusterOrServerGroupName, envVars), 
 								hudson.Util.replaceMacro(artifactVersion, envVars),
 						        hudson.Util.replaceMacro(artifactName, envVars));
@@ -142,6 +203,15 @@ public class MMCDeployerBuilder extends Builder
 				}
 			}
 
+			if (success && batch != null && !batch.isEmpty())
+			{
+				success = false;
+				listener.getLogger().println(">>> Deploying " + batch.getApplicationNames().size() + " applications as deployment " + deploymentName);
+				deployer.deploy(listener.getLogger(), hudson.Util.replaceMacro(clusterOrServerGroupName, envVars), deploymentName,
+				        batch.getVersionIds(), batch.getApplicationNames(), null, batchTargets);
+				success = true;
+			}
+
 		} catch (IOException e)
 		{
 			listener.getLogger().println(e.toString());
@@ -154,29 +224,170 @@ public class MMCDeployerBuilder extends Builder
 		{
 			listener.getLogger().println(e.toString());
 		}
+		if (deployer != null)
+		{
+			deployer.logQueueWait(listener.getLogger());
+		}
+		if (!throughput.getUploads().isEmpty())
+		{
+			build.addAction(throughput);
+		}
+		if (newMetricsAction && !metricsAction.isEmpty())
+		{
+			build.addAction(metricsAction);
+		}
 		return success;
 	}
 
-	private void doDeploy(BuildListener listener, MuleRest muleRest, File aFile, String clusterOrServerGroupName, String theVersion, String theName) throws Exception
+	/**
+	 * Deploys the artifacts one after another, or concurrently with at most {@link #getMaxConcurrentDeployments()}
+	 * in flight when parallel deployment is enabled.
+	 * 
+	 * @return true only if there was at least one artifact and all of them were deployed
+	 */
+	private boolean deployArtifacts(PrintStream logger, List<ArtifactDeployment> deployments) throws InterruptedException
 	{
-		listener.getLogger().println("Deployment starting...");
-		String versionId = muleRest.restfullyUploadRepository(theName, theVersion, aFile);
-		String deploymentId = null;
-		if (clusterOrServerGroupName != null && clusterDeploy)
+		int deployed = 0;
+		if (parallelDeployment && deployments.size() > 1)
 		{
-			listener.getLogger().println("....doing cluster deploy");
-			deploymentId = muleRest.restfullyCreateClusterDeployment(clusterOrServerGroupName, theName, versionId);
-
+			int threads = Math.min(getMaxConcurrentDeployments(), deployments.size());
+			logger.println(">>> Deploying " + deployments.size() + " artifacts, up to " + threads + " in parallel");
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new NamingThreadFactory(new DaemonThreadFactory(), "MMC deployment"));
+			try
+			{
+				List<Future<Void>> results = executor.invokeAll(deployments);
+				for (int i = 0; i < results.size(); i++)
+				{
+					try
+					{
+						results.get(i).get();
+						deployed++;
+					} catch (ExecutionException e)
+					{
+						deployments.get(i).logger.println("Deployment failed: " + e.getCause());
+					}
+				}
+			} finally
+			{
+				executor.shutdownNow();
+			}
 		} else
 		{
-			listener.getLogger().println("....doing serverGroup deploy");
-			deploymentId = muleRest.restfullyCreateDeployment(clusterOrServerGroupName, theName, versionId);
+			for (ArtifactDeployment deployment : deployments)
+			{
+				try
+				{
+					deployment.call();
+					deployed++;
+				} catch (InterruptedException e)
+				{
+					throw e;
+				} catch (Exception e)
+				{
+					deployment.logger.println("Deployment failed: " + e);
+					break;
+				}
+			}
+		}
+		logger.println(">>> " + deployed + " of " + deployments.size() + " artifacts deployed");
+		return !deployments.isEmpty() && deployed == deployments.size();
+	}
+
+	/**
+	 * One artifact of a Maven build waiting to be deployed.
+	 */
+	private final class ArtifactDeployment implements Callable<Void>
+	{
+		private final PrintStream logger;
+		private final MmcDeployer deployer;
+		private final DeploymentBatch batch;
+		private final FilePath file;
+		private final String clusterOrServerGroupName;
+		private final String version;
+		private final String name;
+
+		ArtifactDeployment(PrintStream logger, MmcDeployer deployer, DeploymentBatch batch, FilePath file, String clusterOrServerGroupName,
+		        String version, String name) {
+			this.logger = logger;
+			this.deployer = deployer;
+			this.batch = batch;
+			this.file = file;
+			this.clusterOrServerGroupName = clusterOrServerGroupName;
+			this.version = version;
+			this.name = name;
+		}
+
+		public Void call() throws Exception
+		{
+			doDeploy(logger, deployer, batch, file, clusterOrServerGroupName, version, name);
+			return null;
+		}
+	}
+
+	/**
+	 * Application versions uploaded by one build step to be deployed together.
+	 */
+	private static final class DeploymentBatch
+	{
+		private final List<String> versionIds = new ArrayList<String>();
+		private final List<String> applicationNames = new ArrayList<String>();
+
+		synchronized void add(String applicationName, String versionId)
+		{
+			applicationNames.add(applicationName);
+			versionIds.add(versionId);
+		}
+
+		synchronized boolean isEmpty()
+		{
+			return versionIds.isEmpty();
+		}
 
+		synchronized List<String> getVersionIds()
+		{
+			return new ArrayList<String>(versionIds);
 		}
-		if(completeDeployment){
-			muleRest.restfullyDeployDeploymentById(deploymentId);
+
+		synchronized List<String> getApplicationNames()
+		{
+			return new ArrayList<String>(applicationNames);
 		}
-		listener.getLogger().println("Deployment finished");
+	}
+
+	/**
+	 * Uploads the archive, then creates and activates its deployment, or only adds it to the batch when given one.
+	 * The target and its existing deployment are resolved while the archive is uploaded.
+	 */
+	private void doDeploy(PrintStream logger, MmcDeployer deployer, DeploymentBatch batch, FilePath aFile, String clusterOrServerGroupName,
+	        String theVersion, String theName) throws Exception
+	{
+		logger.println("Deployment starting...");
+		long start = System.currentTimeMillis();
+		Map<String, Future<MmcDeploymentTarget>> resolved = batch == null ? deployer.resolveTargets(clusterOrServerGroupName, theName) : null;
+		String versionId = deployer.upload(logger, aFile, theName, theVersion);
+		if (batch != null)
+		{
+			batch.add(theName, versionId);
+			logger.println("Upload finished, added to batch deployment");
+			return;
+		}
+		deployer.deploy(logger, clusterOrServerGroupName, theName, Collections.singletonList(versionId), Collections.singletonList(theName), null,
+		        resolved);
+		logger.println("Upload and deployment of " + theName + " took " + (System.currentTimeMillis() - start) / 1000.0 + "s");
+	}
+
+	private MmcDeployer newDeployer(MuleRest muleRest, UploadThroughputAction throughput)
+	{
+		MmcDeployer deployer = new MmcDeployer(muleRest, throughput);
+		deployer.setClusterDeploy(clusterDeploy);
+		deployer.setCompleteDeployment(completeDeployment);
+		deployer.setUploadFromAgent(uploadFromAgent);
+		deployer.setWaitForCompletion(waitForCompletion);
+		deployer.setWaitTimeout(waitTimeout);
+		deployer.setMaxConcurrentTargets(maxConcurrentTargets);
+		deployer.setRollingBatchSize(rollingBatchSize);
+		deployer.setSwapDeployment(swapDeployment);
+		return deployer;
 	}
 
 	// Overridden for better type safety.
@@ -195,38 +406,92 @@ public class MMCDeployerBuilder extends Builder
 	public static final class DescriptorImpl extends BuildStepDescriptor<Builder>
 	{
 
+		private int maxConnectionsPerHost = MmcConnectionRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+		private int maxTotalConnections = MmcConnectionRegistry.DEFAULT_MAX_TOTAL_CONNECTIONS;
+		private int idleConnectionTimeout = MmcConnectionRegistry.DEFAULT_IDLE_TIMEOUT_SECONDS;
+		private int topologyCacheTtl = MmcTopologyCache.DEFAULT_TTL_SECONDS;
+		private int maxRetries = MmcRetryPolicy.DEFAULT_MAX_RETRIES;
+		private int retryBaseDelay = MmcRetryPolicy.DEFAULT_BASE_DELAY_MILLIS;
+		private int retryMaxDelay = MmcRetryPolicy.DEFAULT_MAX_DELAY_MILLIS;
+		private int circuitBreakerThreshold = MmcCircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+		private int circuitBreakerOpenSeconds = MmcCircuitBreaker.DEFAULT_OPEN_SECONDS;
+		private int maxConcurrentUploads = MmcAdmission.DEFAULT_MAX_CONCURRENT_UPLOADS;
+		private int maxConcurrentApiCalls = MmcAdmission.DEFAULT_MAX_CONCURRENT_API_CALLS;
+		private int requestsPerSecond;
+		private int listingPageSize;
+
+		private transient UploadLedger uploadLedger;
+
 		/**
 		 * In order to load the persisted global configuration, you have to call load() in the constructor.
 		 */
 		public DescriptorImpl() {
 			load();
+			applyGlobalSettings();
+		}
+
+		@Override
+		public boolean configure(StaplerRequest req, JSONObject formData) throws FormException
+		{
+			req.bindJSON(this, formData);
+			save();
+			applyGlobalSettings();
+			return super.configure(req, formData);
+		}
+
+		/**
+		 * Pushes the global configuration to the Jenkins-wide MMC registries.
+		 */
+		private void applyGlobalSettings()
+		{
+			MmcConnectionRegistry.configure(maxConnectionsPerHost, maxTotalConnections, idleConnectionTimeout);
+			MmcTopologyCache.setTtlSeconds(topologyCacheTtl);
+			MmcRetryPolicy.configure(maxRetries, retryBaseDelay, retryMaxDelay);
+			MmcCircuitBreaker.configure(circuitBreakerThreshold, circuitBreakerOpenSeconds);
+			MmcAdmission.configure(maxConcurrentUploads, maxConcurrentApiCalls, requestsPerSecond);
+			MuleRest.setListingPageSize(listingPageSize);
+		}
+
+		/**
+		 * @return the ledger of uploaded archive digests, stored in the Jenkins home directory
+		 */
+		public synchronized UploadLedger getUploadLedger()
+		{
+			if (uploadLedger == null)
+			{
+				uploadLedger = new UploadLedger(new File(Jenkins.getInstance().getRootDir(), "mule-mmc-upload-ledger.properties"));
+			}
+			return uploadLedger;
 		}
 
 		public FormValidation doTestConnection(@QueryParameter("mmcUrl") final String mmcUrl, @QueryParameter("user") final String user,
 		        @QueryParameter("password") final String password) throws IOException, ServletException
 		{
 
+			// a connection of its own, a typo in the form must not leave a pool behind in the registry
+			SimpleHttpConnectionManager connectionManager = new SimpleHttpConnectionManager(true);
 			try
 			{
 				URL url = new URL(mmcUrl);
-				HttpClient client = new HttpClient();
-
-				client.getState().setCredentials(new AuthScope(url.getHost(), url.getPort()),
-				        new UsernamePasswordCredentials(user, password));
-
-				List authPrefs = new ArrayList(3);
-				authPrefs.add(AuthPolicy.BASIC);
-				client.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY, authPrefs);
-				client.getParams().setAuthenticationPreemptive(true);
+				HttpClient client = MmcConnectionRegistry.createHttpClient(url, user, password, connectionManager);
 
 				GetMethod method = new GetMethod(mmcUrl + "/deployments");
-				int statusCode = client.executeMethod(method);
+				try
+				{
+					int statusCode = client.executeMethod(method);
 
-				if (statusCode == 200) return FormValidation.ok("Success");
-				else return FormValidation.error("Client error : " + method.getStatusText());
+					if (statusCode == 200) return FormValidation.ok("Success");
+					else return FormValidation.error("Client error : " + method.getStatusText());
+				} finally
+				{
+					method.releaseConnection();
+				}
 			} catch (Exception e)
 			{
 				return FormValidation.error("Client error : " + e.getMessage());
+			} finally
+			{
+				connectionManager.shutdown();
 			}
 		}
 
@@ -244,6 +509,144 @@ public class MMCDeployerBuilder extends Builder
 			return "Deploy to Mule Management Console";
 		}
 
+		public int getMaxConnectionsPerHost()
+		{
+			return maxConnectionsPerHost;
+		}
+
+		public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+		{
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+		}
+
+		public int getMaxTotalConnections()
+		{
+			return maxTotalConnections;
+		}
+
+		public void setMaxTotalConnections(int maxTotalConnections)
+		{
+			this.maxTotalConnections = maxTotalConnections;
+		}
+
+		public int getIdleConnectionTimeout()
+		{
+			return idleConnectionTimeout;
+		}
+
+		public void setIdleConnectionTimeout(int idleConnectionTimeout)
+		{
+			this.idleConnectionTimeout = idleConnectionTimeout;
+		}
+
+		public int getTopologyCacheTtl()
+		{
+			return topologyCacheTtl;
+		}
+
+		public void setTopologyCacheTtl(int topologyCacheTtl)
+		{
+			this.topologyCacheTtl = topologyCacheTtl;
+		}
+
+		public int getMaxRetries()
+		{
+			return maxRetries;
+		}
+
+		public void setMaxRetries(int maxRetries)
+		{
+			this.maxRetries = maxRetries;
+		}
+
+		public int getRetryBaseDelay()
+		{
+			return retryBaseDelay;
+		}
+
+		public void setRetryBaseDelay(int retryBaseDelay)
+		{
+			this.retryBaseDelay = retryBaseDelay;
+		}
+
+		public int getRetryMaxDelay()
+		{
+			return retryMaxDelay;
+		}
+
+		public void setRetryMaxDelay(int retryMaxDelay)
+		{
+			this.retryMaxDelay = retryMaxDelay;
+		}
+
+		public int getCircuitBreakerThreshold()
+		{
+			return circuitBreakerThreshold;
+		}
+
+		public void setCircuitBreakerThreshold(int circuitBreakerThreshold)
+		{
+			this.circuitBreakerThreshold = circuitBreakerThreshold;
+		}
+
+		public int getCircuitBreakerOpenSeconds()
+		{
+			return circuitBreakerOpenSeconds;
+		}
+
+		public void setCircuitBreakerOpenSeconds(int circuitBreakerOpenSeconds)
+		{
+			this.circuitBreakerOpenSeconds = circuitBreakerOpenSeconds;
+		}
+
+		public int getMaxConcurrentUploads()
+		{
+			return maxConcurrentUploads;
+		}
+
+		public void setMaxConcurrentUploads(int maxConcurrentUploads)
+		{
+			this.maxConcurrentUploads = maxConcurrentUploads;
+		}
+
+		public int getMaxConcurrentApiCalls()
+		{
+			return maxConcurrentApiCalls;
+		}
+
+		public void setMaxConcurrentApiCalls(int maxConcurrentApiCalls)
+		{
+			this.maxConcurrentApiCalls = maxConcurrentApiCalls;
+		}
+
+		public int getRequestsPerSecond()
+		{
+			return requestsPerSecond;
+		}
+
+		public void setRequestsPerSecond(int requestsPerSecond)
+		{
+			this.requestsPerSecond = requestsPerSecond;
+		}
+
+		public int getListingPageSize()
+		{
+			return listingPageSize;
+		}
+
+		public void setListingPageSize(int listingPageSize)
+		{
+			this.listingPageSize = listingPageSize;
+		}
+
+		/**
+		 * @return the topology caches of all MMCs, for the hit/miss statistics on the global configuration page
+		 */
+		public List<MmcTopologyCache> getTopologyCaches()
+		{
+			return MmcTopologyCache.all();
+		}
+
 	}
 
 	public String getMmcUrl()
@@ -285,4 +688,147 @@ public class MMCDeployerBuilder extends Builder
 	{
 		return clusterOrServerGroupName;
 	}
+
+	public boolean isRefreshTopologyCache()
+	{
+		return refreshTopologyCache;
+	}
+
+	@DataBoundSetter
+	public void setRefreshTopologyCache(boolean refreshTopologyCache)
+	{
+		this.refreshTopologyCache = refreshTopologyCache;
+	}
+
+	public boolean isParallelDeployment()
+	{
+		return parallelDeployment;
+	}
+
+	@DataBoundSetter
+	public void setParallelDeployment(boolean parallelDeployment)
+	{
+		this.parallelDeployment = parallelDeployment;
+	}
+
+	public int getMaxConcurrentDeployments()
+	{
+		return maxConcurrentDeployments > 0 ? maxConcurrentDeployments : DEFAULT_MAX_CONCURRENT_DEPLOYMENTS;
+	}
+
+	@DataBoundSetter
+	public void setMaxConcurrentDeployments(int maxConcurrentDeployments)
+	{
+		this.maxConcurrentDeployments = maxConcurrentDeployments;
+	}
+
+	public boolean isUploadFromAgent()
+	{
+		return uploadFromAgent;
+	}
+
+	@DataBoundSetter
+	public void setUploadFromAgent(boolean uploadFromAgent)
+	{
+		this.uploadFromAgent = uploadFromAgent;
+	}
+
+	public boolean isSkipUnchangedUploads()
+	{
+		return skipUnchangedUploads;
+	}
+
+	@DataBoundSetter
+	public void setSkipUnchangedUploads(boolean skipUnchangedUploads)
+	{
+		this.skipUnchangedUploads = skipUnchangedUploads;
+	}
+
+	public boolean isChunkedUpload()
+	{
+		return chunkedUpload;
+	}
+
+	@DataBoundSetter
+	public void setChunkedUpload(boolean chunkedUpload)
+	{
+		this.chunkedUpload = chunkedUpload;
+	}
+
+	public boolean isWaitForCompletion()
+	{
+		return waitForCompletion;
+	}
+
+	@DataBoundSetter
+	public void setWaitForCompletion(boolean waitForCompletion)
+	{
+		this.waitForCompletion = waitForCompletion;
+	}
+
+	public int getWaitTimeout()
+	{
+		return waitTimeout > 0 ? waitTimeout : MmcDeployer.DEFAULT_WAIT_TIMEOUT;
+	}
+
+	@DataBoundSetter
+	public void setWaitTimeout(int waitTimeout)
+	{
+		this.waitTimeout = waitTimeout;
+	}
+
+	public boolean isBatchDeployment()
+	{
+		return batchDeployment;
+	}
+
+	@DataBoundSetter
+	public void setBatchDeployment(boolean batchDeployment)
+	{
+		this.batchDeployment = batchDeployment;
+	}
+
+	public String getBatchDeploymentName()
+	{
+		return batchDeploymentName;
+	}
+
+	@DataBoundSetter
+	public void setBatchDeploymentName(String batchDeploymentName)
+	{
+		this.batchDeploymentName = batchDeploymentName;
+	}
+
+	public int getMaxConcurrentTargets()
+	{
+		return maxConcurrentTargets > 0 ? maxConcurrentTargets : MmcDeployer.DEFAULT_MAX_CONCURRENT_TARGETS;
+	}
+
+	@DataBoundSetter
+	public void setMaxConcurrentTargets(int maxConcurrentTargets)
+	{
+		this.maxConcurrentTargets = maxConcurrentTargets;
+	}
+
+	public String getRollingBatchSize()
+	{
+		return rollingBatchSize;
+	}
+
+	@DataBoundSetter
+	public void setRollingBatchSize(String rollingBatchSize)
+	{
+		this.rollingBatchSize = rollingBatchSize;
+	}
+
+	public boolean isSwapDeployment()
+	{
+		return swapDeployment;
+	}
+
+	@DataBoundSetter
+	public void setSwapDeployment(boolean swapDeployment)
+	{
+		this.swapDeployment = swapDeployment;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,131 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+
+import java.net.URL;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Build step deleting old application versions from the MMC repository, see {@link MmcRepositoryRetention}.
+ * Run periodically by giving its job a build trigger such as "Build periodically".
+ */
+public class MMCRepositoryRetentionBuilder extends Builder
+{
+	public final String mmcUrl;
+	public final String user;
+	public final String password;
+	public final String applications;
+	public final int keepVersions;
+	public final int batchSize;
+	public final int batchDelaySeconds;
+	public final boolean dryRun;
+
+	@DataBoundConstructor
+	public MMCRepositoryRetentionBuilder(String mmcUrl, String user, String password, String applications, int keepVersions, int batchSize,
+	        int batchDelaySeconds, boolean dryRun) {
+		this.mmcUrl = mmcUrl;
+		this.user = user;
+		this.password = password;
+		this.applications = applications;
+		this.keepVersions = keepVersions;
+		this.batchSize = batchSize;
+		this.batchDelaySeconds = batchDelaySeconds;
+		this.dryRun = dryRun;
+	}
+
+	@Override
+	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+	{
+		listener.getLogger().println(">>> MMC URL IS " + mmcUrl);
+		listener.getLogger().println(">>> Cleaning up the MMC repository, keeping " + getKeepVersions() + " versions per application"
+		        + (dryRun ? " (dry run)" : ""));
+		try
+		{
+			EnvVars envVars = build.getEnvironment(listener);
+			MuleRest muleRest = new MuleRest(new URL(mmcUrl), user, password);
+			MmcMetricsAction metricsAction = build.getAction(MmcMetricsAction.class);
+			if (metricsAction == null)
+			{
+				metricsAction = new MmcMetricsAction();
+				build.addAction(metricsAction);
+			}
+			muleRest.setBuildMetrics(metricsAction.forMmc(muleRest.getMmcUrl()));
+
+			MmcRepositoryRetention retention = new MmcRepositoryRetention(muleRest);
+			retention.setKeepVersions(keepVersions);
+			retention.setBatchSize(batchSize);
+			retention.setBatchDelaySeconds(batchDelaySeconds);
+			retention.setDryRun(dryRun);
+			retention.run(listener.getLogger(), hudson.Util.replaceMacro(applications, envVars));
+			return true;
+		} catch (Exception e)
+		{
+			listener.getLogger().println(e.toString());
+		}
+		return false;
+	}
+
+	public String getMmcUrl()
+	{
+		return mmcUrl;
+	}
+
+	public String getUser()
+	{
+		return user;
+	}
+
+	public String getPassword()
+	{
+		return password;
+	}
+
+	public String getApplications()
+	{
+		return applications;
+	}
+
+	public int getKeepVersions()
+	{
+		return keepVersions > 0 ? keepVersions : MmcRepositoryRetention.DEFAULT_KEEP_VERSIONS;
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize > 0 ? batchSize : MmcRepositoryRetention.DEFAULT_BATCH_SIZE;
+	}
+
+	public int getBatchDelaySeconds()
+	{
+		return batchDelaySeconds;
+	}
+
+	public boolean isDryRun()
+	{
+		return dryRun;
+	}
+
+	@Extension
+	public static final class DescriptorImpl extends BuildStepDescriptor<Builder>
+	{
+		@Override
+		public boolean isApplicable(Class<? extends AbstractProject> aClass)
+		{
+			return true;
+		}
+
+		@Override
+		public String getDisplayName()
+		{
+			return "Clean up Mule Management Console repository";
+		}
+	}
+}
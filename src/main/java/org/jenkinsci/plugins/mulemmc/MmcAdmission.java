@@ -0,0 +1,240 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Admission control shared by all builds talking to the same MMC.
+ * <p>
+ * Uploads and the lightweight API calls each have their own limit of requests in flight, so a burst of
+ * jobs neither floods MMC with uploads nor starves the listing and deployment calls behind them. Requests
+ * over the limit queue in arrival order whichever job they come from. An optional token bucket additionally
+ * caps the rate at which requests of both kinds are started.
+ * <p>
+ * No limit applies until one is set in the global configuration, so builds that already deploy in parallel
+ * keep their throughput.
+ */
+public final class MmcAdmission
+{
+	public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 0;
+	public static final int DEFAULT_MAX_CONCURRENT_API_CALLS = 0;
+
+	/** Permits of a lane without limit, more than can ever be in flight */
+	private static final int UNLIMITED = 1 << 20;
+
+	private static final Logger logger = Logger.getLogger(MmcAdmission.class.getName());
+
+	private static final Map<String, MmcAdmission> admissions = new HashMap<String, MmcAdmission>();
+
+	private static int maxConcurrentUploads = DEFAULT_MAX_CONCURRENT_UPLOADS;
+	private static int maxConcurrentApiCalls = DEFAULT_MAX_CONCURRENT_API_CALLS;
+	private static volatile double requestsPerSecond;
+
+	/**
+	 * A slot obtained from {@link MmcAdmission#acquire(boolean)}, to be released once the request completed.
+	 */
+	public static final class Permit
+	{
+		private final Lane lane;
+		private final long waitMillis;
+		private boolean released;
+
+		private Permit(Lane lane, long waitMillis) {
+			this.lane = lane;
+			this.waitMillis = waitMillis;
+		}
+
+		/**
+		 * @return how long the request was queued before it could start
+		 */
+		public long getWaitMillis()
+		{
+			return waitMillis;
+		}
+
+		/**
+		 * Releases the slot, only the first call has an effect.
+		 */
+		public synchronized void release()
+		{
+			if (released) { return; }
+			released = true;
+			lane.semaphore.release();
+		}
+	}
+
+	/**
+	 * Permits of one kind of request, resized in place when the limit changes.
+	 */
+	private static final class Lane
+	{
+		private final ResizableSemaphore semaphore = new ResizableSemaphore();
+		private int limit;
+
+		/**
+		 * @param requestedLimit requests in flight, 0 for no limit
+		 */
+		synchronized void resize(int requestedLimit)
+		{
+			int newLimit = requestedLimit > 0 ? requestedLimit : UNLIMITED;
+			if (newLimit > limit)
+			{
+				semaphore.release(newLimit - limit);
+			} else if (newLimit < limit)
+			{
+				// permits in use are taken back as they are released
+				semaphore.reducePermits(limit - newLimit);
+			}
+			limit = newLimit;
+		}
+	}
+
+	private static final class ResizableSemaphore extends Semaphore
+	{
+		private static final long serialVersionUID = 1L;
+
+		ResizableSemaphore() {
+			// fair, so permits go to the requests in arrival order
+			super(0, true);
+		}
+
+		@Override
+		protected void reducePermits(int reduction)
+		{
+			super.reducePermits(reduction);
+		}
+	}
+
+	private final String mmcUrl;
+	private final Lane uploads = new Lane();
+	private final Lane apiCalls = new Lane();
+	private double tokens;
+	private long refilledAt;
+	private boolean bucketStarted;
+
+	private MmcAdmission(String mmcUrl) {
+		this.mmcUrl = mmcUrl;
+		uploads.resize(maxConcurrentUploads);
+		apiCalls.resize(maxConcurrentApiCalls);
+	}
+
+	public static MmcAdmission forMmc(URL mmcUrl)
+	{
+		String key = mmcUrl.toExternalForm();
+		synchronized (admissions)
+		{
+			MmcAdmission admission = admissions.get(key);
+			if (admission == null)
+			{
+				admission = new MmcAdmission(key);
+				admissions.put(key, admission);
+			}
+			return admission;
+		}
+	}
+
+	/**
+	 * Applies new limits to all existing and future MMCs.
+	 *
+	 * @param uploads concurrent uploads per MMC, 0 for no limit
+	 * @param apiCalls concurrent API calls per MMC, 0 for no limit
+	 * @param rate requests started per second per MMC, 0 for no limit
+	 */
+	public static void configure(int uploads, int apiCalls, double rate)
+	{
+		synchronized (admissions)
+		{
+			maxConcurrentUploads = Math.max(0, uploads);
+			maxConcurrentApiCalls = Math.max(0, apiCalls);
+			requestsPerSecond = Math.max(0, rate);
+			logger.fine(">>>>configure maxConcurrentUploads " + maxConcurrentUploads + " maxConcurrentApiCalls " + maxConcurrentApiCalls
+			        + " requestsPerSecond " + requestsPerSecond);
+
+			for (MmcAdmission admission : admissions.values())
+			{
+				admission.uploads.resize(maxConcurrentUploads);
+				admission.apiCalls.resize(maxConcurrentApiCalls);
+			}
+		}
+	}
+
+	/**
+	 * Waits for a free slot of the given kind, then for a token when a rate is configured.
+	 *
+	 * @param upload true for an upload, false for an API call
+	 */
+	public Permit acquire(boolean upload) throws InterruptedException
+	{
+		long start = System.currentTimeMillis();
+		Lane lane = upload ? uploads : apiCalls;
+		lane.semaphore.acquire();
+		try
+		{
+			long tokenWait = reserveToken();
+			if (tokenWait > 0)
+			{
+				Thread.sleep(tokenWait);
+			}
+		} catch (InterruptedException e)
+		{
+			lane.semaphore.release();
+			throw e;
+		}
+
+		long waitMillis = System.currentTimeMillis() - start;
+		if (waitMillis > 0)
+		{
+			logger.fine(">>>>acquire " + (upload ? "upload" : "API call") + " to " + mmcUrl + " queued for " + waitMillis + "ms");
+		}
+		return new Permit(lane, waitMillis);
+	}
+
+	/**
+	 * Takes a token from the bucket, which holds at most one second worth of requests. Tokens are handed out
+	 * in call order and may be taken ahead of time, the caller then waits until its token is due.
+	 *
+	 * @return milliseconds to wait before starting the request
+	 */
+	private synchronized long reserveToken()
+	{
+		double rate = requestsPerSecond;
+		if (rate <= 0) { return 0; }
+
+		long now = System.nanoTime();
+		if (!bucketStarted)
+		{
+			// the bucket starts full
+			tokens = Math.max(1, rate);
+			refilledAt = now;
+			bucketStarted = true;
+		}
+		tokens = Math.min(Math.max(1, rate), tokens + (now - refilledAt) * rate / 1000000000L);
+		refilledAt = now;
+		tokens--;
+		return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1000 / rate);
+	}
+
+	public String getMmcUrl()
+	{
+		return mmcUrl;
+	}
+
+	/**
+	 * @return uploads waiting for a slot
+	 */
+	public int getQueuedUploads()
+	{
+		return uploads.semaphore.getQueueLength();
+	}
+
+	/**
+	 * @return API calls waiting for a slot
+	 */
+	public int getQueuedApiCalls()
+	{
+		return apiCalls.semaphore.getQueueLength();
+	}
+}
@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker shared by all builds talking to the same MMC.
+ * <p>
+ * After a number of consecutive failures (transport errors or 5xx responses) the breaker opens and
+ * every call fails fast for a while instead of adding load to an MMC that is clearly down. Once that
+ * time is over a single probe call is let through: its success closes the breaker again, its failure
+ * keeps it open for another period.
+ */
+public final class MmcCircuitBreaker
+{
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final int DEFAULT_OPEN_SECONDS = 30;
+
+	private static final Logger logger = Logger.getLogger(MmcCircuitBreaker.class.getName());
+
+	private static final Map<String, MmcCircuitBreaker> breakers = new HashMap<String, MmcCircuitBreaker>();
+
+	private static volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private static volatile long openMillis = DEFAULT_OPEN_SECONDS * 1000L;
+
+	private final String mmcUrl;
+	private int consecutiveFailures;
+	private long openUntil;
+	private boolean open;
+	private boolean probing;
+
+	private MmcCircuitBreaker(String mmcUrl) {
+		this.mmcUrl = mmcUrl;
+	}
+
+	public static MmcCircuitBreaker forMmc(URL mmcUrl)
+	{
+		String key = mmcUrl.toExternalForm();
+		synchronized (breakers)
+		{
+			MmcCircuitBreaker breaker = breakers.get(key);
+			if (breaker == null)
+			{
+				breaker = new MmcCircuitBreaker(key);
+				breakers.put(key, breaker);
+			}
+			return breaker;
+		}
+	}
+
+	/**
+	 * @param threshold consecutive failures opening the breaker, 0 disables it
+	 */
+	public static void configure(int threshold, int openSeconds)
+	{
+		failureThreshold = Math.max(0, threshold);
+		openMillis = (openSeconds > 0 ? openSeconds : DEFAULT_OPEN_SECONDS) * 1000L;
+	}
+
+	/**
+	 * Called before every request, which must then end with {@link #recordSuccess()}, {@link #recordFailure()}
+	 * or, when it is the probe and ends without an outcome, {@link #releaseProbe()}.
+	 * 
+	 * @return true if the request is the probe of an open breaker
+	 * @throws IOException if the breaker is open
+	 */
+	public synchronized boolean acquire() throws IOException
+	{
+		if (!open) { return false; }
+		long now = System.currentTimeMillis();
+		if (now < openUntil || probing) { throw new IOException("MMC " + mmcUrl + " is unavailable, not calling it for "
+		        + Math.max(1, (openUntil - now) / 1000) + "s after " + consecutiveFailures + " consecutive failures"); }
+		logger.fine(">>>>acquire probing " + mmcUrl);
+		probing = true;
+		return true;
+	}
+
+	/**
+	 * Gives up a probe that ended without telling whether MMC is available, for instance because it was
+	 * interrupted, so the next request probes instead of the breaker failing fast for good.
+	 */
+	public synchronized void releaseProbe()
+	{
+		if (!probing) { return; }
+		logger.fine(">>>>releaseProbe " + mmcUrl);
+		probing = false;
+	}
+
+	public synchronized void recordSuccess()
+	{
+		if (open)
+		{
+			logger.info("MMC " + mmcUrl + " is available again, closing circuit breaker");
+		}
+		consecutiveFailures = 0;
+		open = false;
+		probing = false;
+	}
+
+	public synchronized void recordFailure()
+	{
+		consecutiveFailures++;
+		if (failureThreshold > 0 && (probing || consecutiveFailures >= failureThreshold))
+		{
+			if (!open)
+			{
+				logger.warning("MMC " + mmcUrl + " failed " + consecutiveFailures + " times in a row, opening circuit breaker");
+			}
+			open = true;
+			probing = false;
+			openUntil = System.currentTimeMillis() + openMillis;
+		}
+	}
+
+	public synchronized boolean isOpen()
+	{
+		return open;
+	}
+}
@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.init.Terminator;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthPolicy;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+/**
+ * Jenkins-wide registry of pooled HTTP connection managers, one per MMC URL and user.
+ * <p>
+ * Every {@link MuleRest} talking to the same MMC with the same account shares one
+ * {@link MultiThreadedHttpConnectionManager}, so concurrent builds reuse keep-alive
+ * connections instead of opening a new connection for every REST call. Idle connections
+ * are closed by a single background thread.
+ */
+public final class MmcConnectionRegistry
+{
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 40;
+	public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+
+	private static final Logger logger = Logger.getLogger(MmcConnectionRegistry.class.getName());
+
+	private static final Map<String, MultiThreadedHttpConnectionManager> managers = new HashMap<String, MultiThreadedHttpConnectionManager>();
+
+	private static int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private static int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+	private static int idleTimeoutSeconds = DEFAULT_IDLE_TIMEOUT_SECONDS;
+
+	private static IdleConnectionTimeoutThread idleConnectionThread;
+
+	private MmcConnectionRegistry() {
+	}
+
+	/**
+	 * Applies new pool limits to all existing and future connection managers.
+	 */
+	public static synchronized void configure(int connectionsPerHost, int totalConnections, int idleSeconds)
+	{
+		maxConnectionsPerHost = connectionsPerHost > 0 ? connectionsPerHost : DEFAULT_MAX_CONNECTIONS_PER_HOST;
+		maxTotalConnections = totalConnections > 0 ? totalConnections : DEFAULT_MAX_TOTAL_CONNECTIONS;
+		idleTimeoutSeconds = idleSeconds > 0 ? idleSeconds : DEFAULT_IDLE_TIMEOUT_SECONDS;
+		logger.fine(">>>>configure maxConnectionsPerHost " + maxConnectionsPerHost + " maxTotalConnections " + maxTotalConnections
+		        + " idleTimeoutSeconds " + idleTimeoutSeconds);
+
+		for (MultiThreadedHttpConnectionManager manager : managers.values())
+		{
+			applyParams(manager);
+		}
+		if (idleConnectionThread != null)
+		{
+			idleConnectionThread.shutdown();
+			idleConnectionThread = null;
+			startIdleConnectionThread();
+		}
+	}
+
+	/**
+	 * @return the shared connection manager for the given MMC and user, created on first use
+	 */
+	public static synchronized MultiThreadedHttpConnectionManager getConnectionManager(URL mmcUrl, String user)
+	{
+		String key = mmcUrl.toExternalForm() + "|" + user;
+		MultiThreadedHttpConnectionManager manager = managers.get(key);
+		if (manager == null)
+		{
+			logger.fine(">>>>getConnectionManager creating pool for " + key);
+			manager = new MultiThreadedHttpConnectionManager();
+			applyParams(manager);
+			managers.put(key, manager);
+			if (idleConnectionThread == null)
+			{
+				startIdleConnectionThread();
+			} else
+			{
+				idleConnectionThread.addConnectionManager(manager);
+			}
+		}
+		return manager;
+	}
+
+	/**
+	 * Creates a lightweight {@link HttpClient} bound to the shared pool and authenticating
+	 * preemptively with basic auth. The returned client is safe to use from several threads.
+	 */
+	public static HttpClient createHttpClient(URL mmcUrl, String user, String password)
+	{
+		return createHttpClient(mmcUrl, user, password, getConnectionManager(mmcUrl, user));
+	}
+
+	/**
+	 * Creates an {@link HttpClient} authenticating like the pooled ones but bound to the given connection
+	 * manager, which the caller shuts down when done.
+	 */
+	static HttpClient createHttpClient(URL mmcUrl, String user, String password, HttpConnectionManager connectionManager)
+	{
+		HttpClient httpClient = new HttpClient(connectionManager);
+
+		httpClient.getState().setCredentials(new AuthScope(mmcUrl.getHost(), mmcUrl.getPort()),
+		        new UsernamePasswordCredentials(user, password));
+
+		List<String> authPrefs = new ArrayList<String>(3);
+		authPrefs.add(AuthPolicy.BASIC);
+		httpClient.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY, authPrefs);
+		httpClient.getParams().setAuthenticationPreemptive(true);
+
+		return httpClient;
+	}
+
+	/**
+	 * Closes all pooled connections, called when Jenkins shuts down.
+	 */
+	@Terminator
+	public static synchronized void shutdown()
+	{
+		if (idleConnectionThread != null)
+		{
+			idleConnectionThread.shutdown();
+			idleConnectionThread = null;
+		}
+		for (MultiThreadedHttpConnectionManager manager : managers.values())
+		{
+			manager.shutdown();
+		}
+		managers.clear();
+	}
+
+	private static void applyParams(MultiThreadedHttpConnectionManager manager)
+	{
+		HttpConnectionManagerParams params = manager.getParams();
+		params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+		params.setMaxTotalConnections(maxTotalConnections);
+		// pooled keep-alive connections may have been closed by MMC while idle
+		params.setStaleCheckingEnabled(true);
+	}
+
+	private static void startIdleConnectionThread()
+	{
+		idleConnectionThread = new IdleConnectionTimeoutThread();
+		idleConnectionThread.setName("MMC idle connection evictor");
+		idleConnectionThread.setConnectionTimeout(idleTimeoutSeconds * 1000L);
+		idleConnectionThread.setTimeoutInterval(Math.max(1000L, idleTimeoutSeconds * 1000L / 2));
+		for (MultiThreadedHttpConnectionManager manager : managers.values())
+		{
+			idleConnectionThread.addConnectionManager(manager);
+		}
+		idleConnectionThread.start();
+	}
+}
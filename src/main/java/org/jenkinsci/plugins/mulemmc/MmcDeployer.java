@@ -0,0 +1,750 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.FilePath;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The upload, create, activate and wait sequence shared by {@link MMCDeployerBuilder} and {@link MMCDeployStep}.
+ */
+final class MmcDeployer
+{
+	static final int DEFAULT_MAX_CONCURRENT_TARGETS = 4;
+	static final int DEFAULT_WAIT_TIMEOUT = 600;
+
+	private final MuleRest muleRest;
+	private final UploadThroughputAction throughput;
+
+	private boolean clusterDeploy;
+	private boolean completeDeployment;
+	private boolean uploadFromAgent;
+	private boolean waitForCompletion;
+	private int waitTimeout = DEFAULT_WAIT_TIMEOUT;
+	private int maxConcurrentTargets = DEFAULT_MAX_CONCURRENT_TARGETS;
+	private String rollingBatchSize;
+	private boolean swapDeployment;
+
+	/**
+	 * @param throughput receives the throughput of every upload
+	 */
+	MmcDeployer(MuleRest muleRest, UploadThroughputAction throughput) {
+		this.muleRest = muleRest;
+		this.throughput = throughput;
+	}
+
+	void setClusterDeploy(boolean clusterDeploy)
+	{
+		this.clusterDeploy = clusterDeploy;
+	}
+
+	/**
+	 * Activates the deployments after they are created.
+	 */
+	void setCompleteDeployment(boolean completeDeployment)
+	{
+		this.completeDeployment = completeDeployment;
+	}
+
+	/**
+	 * Uploads archives of remote workspaces directly from the agent instead of through the master.
+	 */
+	void setUploadFromAgent(boolean uploadFromAgent)
+	{
+		this.uploadFromAgent = uploadFromAgent;
+	}
+
+	void setWaitForCompletion(boolean waitForCompletion)
+	{
+		this.waitForCompletion = waitForCompletion;
+	}
+
+	/**
+	 * @param waitTimeout seconds, the default applies when not positive
+	 */
+	void setWaitTimeout(int waitTimeout)
+	{
+		this.waitTimeout = waitTimeout > 0 ? waitTimeout : DEFAULT_WAIT_TIMEOUT;
+	}
+
+	/**
+	 * @param maxConcurrentTargets the default applies when not positive
+	 */
+	void setMaxConcurrentTargets(int maxConcurrentTargets)
+	{
+		this.maxConcurrentTargets = maxConcurrentTargets > 0 ? maxConcurrentTargets : DEFAULT_MAX_CONCURRENT_TARGETS;
+	}
+
+	/**
+	 * Deploys to the servers of a server group in batches, one after another.
+	 * 
+	 * @param rollingBatchSize number of servers per batch, or a percentage of the servers such as {@code 25%};
+	 *        null or empty deploys to all servers at once
+	 */
+	void setRollingBatchSize(String rollingBatchSize)
+	{
+		this.rollingBatchSize = rollingBatchSize != null && rollingBatchSize.trim().length() > 0 ? rollingBatchSize.trim() : null;
+	}
+
+	/**
+	 * Creates and activates the new deployment under a temporary name and only removes the old deployment once
+	 * the new one completed, instead of deleting the old deployment first. Both target the same servers, so
+	 * activating the new deployment replaces the running applications; the old deployment is kept to re-activate
+	 * it when the new one fails.
+	 */
+	void setSwapDeployment(boolean swapDeployment)
+	{
+		this.swapDeployment = swapDeployment;
+	}
+
+	MuleRest getMuleRest()
+	{
+		return muleRest;
+	}
+
+	/**
+	 * Reports how long the requests waited for admission by the MMC, to help sizing its limits.
+	 */
+	void logQueueWait(PrintStream logger)
+	{
+		MuleRest.QueueWait apiCalls = muleRest.getQueueWait(false);
+		MuleRest.QueueWait uploads = muleRest.getQueueWait(true);
+		logger.println("....MMC queue: " + apiCalls.getQueued() + " of " + apiCalls.getRequests() + " API calls waited "
+		        + apiCalls.getWaitMillis() / 1000.0 + "s, " + uploads.getQueued() + " of " + uploads.getRequests() + " uploads waited "
+		        + uploads.getWaitMillis() / 1000.0 + "s");
+	}
+
+	/**
+	 * Uploads the archive to the MMC repository unless MMC already has it.
+	 * 
+	 * @return the version id of the uploaded or reused archive
+	 */
+	String upload(PrintStream logger, FilePath aFile, String theName, String theVersion) throws Exception
+	{
+		long start = System.currentTimeMillis();
+		if (muleRest.getAdmission().getQueuedUploads() > 0)
+		{
+			logger.println("....waiting in line behind " + muleRest.getAdmission().getQueuedUploads() + " uploads to MMC");
+		}
+		String versionId;
+		UploadProgress progress = new UploadProgress(logger);
+		if (uploadFromAgent && aFile.isRemote())
+		{
+			logger.println("....uploading from agent");
+			versionId = AgentUpload.upload(muleRest, aFile, theName, theVersion, logger, progress);
+		} else
+		{
+			versionId = muleRest.restfullyUploadRepository(theName, theVersion, new File(aFile.getRemote()), progress);
+		}
+		if (progress.getBytesSent() > 0)
+		{
+			throughput.add(theName, theVersion, progress.getBytesSent(), progress.getElapsedMillis());
+		}
+		logger.println("....upload of " + theName + " " + theVersion + " finished in " + (System.currentTimeMillis() - start) / 1000.0 + "s");
+		return versionId;
+	}
+
+	/**
+	 * Starts resolving the comma or newline separated targets and their existing deployments in the background,
+	 * so it overlaps with the upload. Only the plain create and activate flow uses the result, rolling and swap
+	 * deployments resolve their targets themselves.
+	 * 
+	 * @return the pending resolution of each target to pass to
+	 *         {@link #deploy(PrintStream, String, String, List, List, DeploymentProgress, Map)}, or null
+	 */
+	Map<String, Future<MmcDeploymentTarget>> resolveTargets(String clusterOrServerGroupName, String deploymentName)
+	{
+		List<String> targets = targetsOf(clusterOrServerGroupName);
+		if (targets.isEmpty() || rollingBatchSize != null || swapDeployment) { return null; }
+
+		Map<String, Future<MmcDeploymentTarget>> resolved = new HashMap<String, Future<MmcDeploymentTarget>>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrentTargets, targets.size()), new NamingThreadFactory(
+		        new DaemonThreadFactory(), "MMC target resolution"));
+		try
+		{
+			for (final String target : targets)
+			{
+				final String targetDeploymentName = targets.size() == 1 ? deploymentName : deploymentName + "-" + target;
+				resolved.put(target, executor.submit(new Callable<MmcDeploymentTarget>()
+				{
+					public MmcDeploymentTarget call() throws Exception
+					{
+						return muleRest.restfullyResolveTarget(target, clusterDeploy, targetDeploymentName);
+					}
+				}));
+			}
+		} finally
+		{
+			// lets the submitted resolutions finish, the threads end with them
+			executor.shutdown();
+		}
+		return resolved;
+	}
+
+	/**
+	 * Creates and activates the deployment on each of the comma or newline separated targets. Several targets
+	 * are deployed concurrently with at most {@code maxConcurrentTargets} in flight, each under the name
+	 * {@code <deploymentName>-<target>}.
+	 * 
+	 * @param progress records the deployments created and completed, so a resumed deployment skips them; may be null
+	 */
+	void deploy(PrintStream logger, String clusterOrServerGroupName, String deploymentName, List<String> versionIds, List<String> applicationNames,
+	        DeploymentProgress progress) throws Exception
+	{
+		deploy(logger, clusterOrServerGroupName, deploymentName, versionIds, applicationNames, progress, null);
+	}
+
+	/**
+	 * @param resolved the targets resolved by {@link #resolveTargets(String, String)} while uploading; may be null
+	 */
+	void deploy(PrintStream logger, String clusterOrServerGroupName, final String deploymentName, final List<String> versionIds,
+	        final List<String> applicationNames, final DeploymentProgress progress, final Map<String, Future<MmcDeploymentTarget>> resolved)
+	        throws Exception
+	{
+		final List<String> targets = targetsOf(clusterOrServerGroupName);
+		if (targets.size() <= 1)
+		{
+			String target = targets.isEmpty() ? clusterOrServerGroupName : targets.get(0);
+			deployTarget(logger, target, deploymentName, versionIds, applicationNames, progress, resolved != null ? resolved.get(target) : null);
+			return;
+		}
+
+		int threads = Math.min(maxConcurrentTargets, targets.size());
+		logger.println("....deploying " + deploymentName + " to " + targets.size() + " targets, up to " + threads + " in parallel");
+		List<Callable<Long>> deployments = new ArrayList<Callable<Long>>();
+		for (final String target : targets)
+		{
+			final PrintStream targetLogger = new PrefixedPrintStream(logger, "[" + target + "] ");
+			deployments.add(new Callable<Long>()
+			{
+				public Long call() throws Exception
+				{
+					long start = System.currentTimeMillis();
+					deployTarget(targetLogger, target, deploymentName + "-" + target, versionIds, applicationNames, progress,
+					        resolved != null ? resolved.get(target) : null);
+					return System.currentTimeMillis() - start;
+				}
+			});
+		}
+
+		int failed = 0;
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new NamingThreadFactory(new DaemonThreadFactory(), "MMC target deployment"));
+		try
+		{
+			List<Future<Long>> results = executor.invokeAll(deployments);
+			for (int i = 0; i < results.size(); i++)
+			{
+				try
+				{
+					logger.println("....target " + targets.get(i) + " deployed in " + results.get(i).get() / 1000.0 + "s");
+				} catch (ExecutionException e)
+				{
+					failed++;
+					logger.println("....target " + targets.get(i) + " FAILED: " + e.getCause());
+				}
+			}
+		} finally
+		{
+			executor.shutdownNow();
+		}
+		if (failed > 0) { throw new Exception("Deployment " + deploymentName + " failed on " + failed + " of " + targets.size() + " targets"); }
+	}
+
+	/**
+	 * @return the trimmed targets of a comma or newline separated list
+	 */
+	static List<String> targetsOf(String clusterOrServerGroupNames)
+	{
+		List<String> targets = new ArrayList<String>();
+		if (clusterOrServerGroupNames == null) { return targets; }
+		for (String target : clusterOrServerGroupNames.split("[,\\n]"))
+		{
+			if (target.trim().length() > 0 && !targets.contains(target.trim()))
+			{
+				targets.add(target.trim());
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * @param resolved the target and its existing deployment being resolved in the background; may be null
+	 */
+	private void deployTarget(PrintStream logger, String clusterOrServerGroupName, String deploymentName, List<String> versionIds,
+	        List<String> applicationNames, DeploymentProgress progress, Future<MmcDeploymentTarget> resolved) throws Exception
+	{
+		if (progress != null && progress.isCompleted(clusterOrServerGroupName))
+		{
+			logger.println("....deployment " + deploymentName + " already completed");
+			return;
+		}
+
+		if (rollingBatchSize != null)
+		{
+			if (clusterDeploy || !completeDeployment)
+			{
+				logger.println("....rolling deployment needs a server group and Deploy After Upload, deploying to all servers at once");
+			} else
+			{
+				deployRolling(logger, clusterOrServerGroupName, deploymentName, versionIds, applicationNames, progress);
+				return;
+			}
+		}
+
+		if (swapDeployment)
+		{
+			if (!completeDeployment)
+			{
+				logger.println("....swap deployment needs Deploy After Upload, replacing the deployment in place");
+			} else
+			{
+				deploySwap(logger, clusterOrServerGroupName, deploymentName, versionIds, applicationNames, progress);
+				return;
+			}
+		}
+
+		String deploymentId = progress != null ? progress.getDeploymentId(clusterOrServerGroupName) : null;
+		if (deploymentId != null)
+		{
+			logger.println("....re-attaching to deployment " + deploymentName + " (" + deploymentId + ")");
+		} else if (resolved != null)
+		{
+			long joinStart = System.currentTimeMillis();
+			MmcDeploymentTarget target = join(resolved);
+			long createStart = System.currentTimeMillis();
+			logger.println("....resolved " + target.getName() + (target.getExistingDeploymentId() != null ? " and its deployment" : "") + " in "
+			        + target.getResolveMillis() / 1000.0 + "s during the upload, waited " + (createStart - joinStart) / 1000.0 + "s for it");
+			logger.println(target.isCluster() ? "....doing cluster deploy" : "....doing serverGroup deploy");
+			deploymentId = muleRest.restfullyCreateDeployment(target, versionIds);
+			logger.println("....deployment created in " + (System.currentTimeMillis() - createStart) / 1000.0 + "s");
+			if (progress != null)
+			{
+				progress.created(clusterOrServerGroupName, deploymentId);
+			}
+		} else
+		{
+			if (clusterOrServerGroupName != null && clusterDeploy)
+			{
+				logger.println("....doing cluster deploy");
+				deploymentId = muleRest.restfullyCreateClusterDeployment(clusterOrServerGroupName, deploymentName, versionIds);
+
+			} else
+			{
+				logger.println("....doing serverGroup deploy");
+				deploymentId = muleRest.restfullyCreateDeployment(clusterOrServerGroupName, deploymentName, versionIds);
+
+			}
+			if (progress != null)
+			{
+				progress.created(clusterOrServerGroupName, deploymentId);
+			}
+		}
+		MmcDeployment unchanged = muleRest.getUnchangedDeployment(deploymentId);
+		if (unchanged != null && (unchanged.isDeployed() || !completeDeployment))
+		{
+			logger.println("....deployment " + deploymentName + " is already up to date, not redeploying");
+		} else if (completeDeployment)
+		{
+			long activateStart = System.currentTimeMillis();
+			if (progress == null || !progress.isActivated(clusterOrServerGroupName))
+			{
+				muleRest.restfullyDeployDeploymentById(deploymentId);
+				if (progress != null)
+				{
+					progress.activated(clusterOrServerGroupName);
+				}
+			}
+			if (waitForCompletion && !new DeploymentWaiter(muleRest, logger, waitTimeout * 1000L).await(deploymentId, applicationNames))
+			{
+				throw new Exception("Deployment " + deploymentName + " did not complete on all servers");
+			}
+			logger.println("....deployment " + (waitForCompletion ? "completed" : "activated") + " in "
+			        + (System.currentTimeMillis() - activateStart) / 1000.0 + "s");
+		}
+		if (progress != null)
+		{
+			progress.completed(clusterOrServerGroupName);
+		}
+		logger.println("Deployment finished");
+	}
+
+	/**
+	 * Deploys to the servers of the group in batches of {@code rollingBatchSize}, each one named
+	 * {@code <deploymentName>-batch-<n>}. A batch is activated once the previous one completed on all of its
+	 * servers; the first batch failing stops the rollout. The servers of a completed batch are taken out of the
+	 * previous deployment, and once all batches completed the batch deployments are merged back into a single
+	 * {@code deploymentName} deployment.
+	 */
+	private void deployRolling(PrintStream logger, String serverGroup, String deploymentName, List<String> versionIds,
+	        List<String> applicationNames, DeploymentProgress progress) throws Exception
+	{
+		List<String> servers = new ArrayList<String>(muleRest.restfullyGetServers(serverGroup));
+		if (servers.isEmpty()) { throw new IllegalArgumentException("No server found into group : " + serverGroup); }
+
+		String unchangedId = muleRest.restfullyFindUnchangedDeployment(serverGroup, false, deploymentName, versionIds);
+		MmcDeployment unchanged = unchangedId != null ? muleRest.getUnchangedDeployment(unchangedId) : null;
+		if (unchanged != null && unchanged.isDeployed())
+		{
+			logger.println("....deployment " + deploymentName + " is already up to date, not redeploying");
+			removeBatchDeployments(logger, deploymentName, null);
+			if (progress != null)
+			{
+				progress.completed(serverGroup);
+			}
+			return;
+		}
+
+		int batchSize = batchSizeOf(rollingBatchSize, servers.size());
+		int batches = (servers.size() + batchSize - 1) / batchSize;
+		logger.println("....rolling deployment of " + deploymentName + " to " + servers.size() + " servers in " + batches + " batches of up to "
+		        + batchSize);
+
+		// the deployment being replaced, shrunk batch by batch
+		String previousId = muleRest.restfullyGetDeploymentIdByName(deploymentName);
+		MmcDeployment previous = previousId != null ? muleRest.restfullyGetDeployment(previousId) : null;
+		Set<String> previousServers = previous != null ? new TreeSet<String>(previous.getServers()) : new TreeSet<String>();
+
+		long rolloutStart = System.currentTimeMillis();
+		for (int batch = 0; batch < batches; batch++)
+		{
+			List<String> batchServers = servers.subList(batch * batchSize, Math.min(servers.size(), (batch + 1) * batchSize));
+			String batchName = MuleRest.batchName(deploymentName, batch + 1);
+			// progress is kept per batch so a resumed rollout continues with the first unfinished batch
+			String batchKey = (serverGroup != null ? serverGroup : "") + "/batch-" + (batch + 1);
+			if (progress != null && progress.isCompleted(batchKey))
+			{
+				logger.println("....batch " + (batch + 1) + "/" + batches + " already completed");
+			} else
+			{
+				deployBatch(logger, deploymentName, batch + 1, batches, batchName, batchKey, batchServers, versionIds, applicationNames, progress);
+			}
+
+			if (previous != null && previousServers.removeAll(batchServers))
+			{
+				if (previousServers.isEmpty())
+				{
+					logger.println("....removing " + deploymentName + ", all of its servers are deployed by the new batches");
+					muleRest.restfullyDeleteDeploymentById(previousId);
+					previous = null;
+				} else if (!muleRest.restfullyUpdateServerDeployment(previousId, deploymentName, previousServers, previous.getApplications()))
+				{
+					logger.println("....MMC did not update " + deploymentName + ", it is removed once the rollout finished");
+					previousServers.clear();
+				}
+			}
+		}
+
+		if (previous != null)
+		{
+			logger.println("....removing " + deploymentName + ", all of its servers are deployed by the new batches");
+			muleRest.restfullyDeleteDeploymentById(previousId);
+		}
+		mergeBatchDeployments(logger, deploymentName, batches, servers, versionIds);
+		if (progress != null)
+		{
+			progress.completed(serverGroup);
+		}
+		logger.println("Rolling deployment finished in " + (System.currentTimeMillis() - rolloutStart) / 1000.0 + "s");
+	}
+
+	/**
+	 * Creates, activates and awaits the deployment of one batch of a rolling deployment.
+	 */
+	private void deployBatch(PrintStream logger, String deploymentName, int batch, int batches, String batchName, String batchKey,
+	        List<String> batchServers, List<String> versionIds, List<String> applicationNames, DeploymentProgress progress) throws Exception
+	{
+		long batchStart = System.currentTimeMillis();
+		String deploymentId = progress != null ? progress.getDeploymentId(batchKey) : null;
+		if (deploymentId == null)
+		{
+			deploymentId = muleRest.restfullyCreateServerDeployment(batchName, batchServers, versionIds);
+			if (progress != null)
+			{
+				progress.created(batchKey, deploymentId);
+			}
+		}
+		MmcDeployment unchanged = muleRest.getUnchangedDeployment(deploymentId);
+		if (unchanged != null && unchanged.isDeployed())
+		{
+			logger.println("....batch " + batch + "/" + batches + " is already up to date, not redeploying");
+		} else
+		{
+			if (progress == null || !progress.isActivated(batchKey))
+			{
+				muleRest.restfullyDeployDeploymentById(deploymentId);
+				if (progress != null)
+				{
+					progress.activated(batchKey);
+				}
+			}
+			if (!new DeploymentWaiter(muleRest, logger, waitTimeout * 1000L).await(deploymentId, applicationNames))
+			{
+				throw new Exception("Batch " + batch + "/" + batches + " of rolling deployment " + deploymentName
+				        + " did not complete, stopping the rollout");
+			}
+			logger.println("....batch " + batch + "/" + batches + " (" + batchServers.size() + " servers) completed in "
+			        + (System.currentTimeMillis() - batchStart) / 1000.0 + "s");
+		}
+		if (progress != null)
+		{
+			progress.completed(batchKey);
+		}
+	}
+
+	/**
+	 * Turns the deployment of the last batch into the {@code deploymentName} deployment of all servers and removes
+	 * the other batch deployments. Every server already runs the new versions, so nothing is activated again; where
+	 * MMC does not update deployments, a {@code deploymentName} deployment of all servers is created instead.
+	 */
+	private void mergeBatchDeployments(PrintStream logger, String deploymentName, int batches, List<String> servers, List<String> versionIds)
+	        throws Exception
+	{
+		Map<String, String> batchDeployments = muleRest.restfullyGetBatchDeployments(deploymentName);
+		String mergedId = batchDeployments.get(MuleRest.batchName(deploymentName, batches));
+		if (mergedId == null) { return; }
+
+		if (muleRest.restfullyUpdateServerDeployment(mergedId, deploymentName, servers, versionIds))
+		{
+			logger.println("....merged the batches into " + deploymentName);
+			removeBatchDeployments(logger, deploymentName, mergedId);
+		} else
+		{
+			logger.println("....MMC did not update deployments, recording the batches as " + deploymentName + " without activating it again");
+			muleRest.restfullyCreateServerDeployment(deploymentName, servers, versionIds);
+			removeBatchDeployments(logger, deploymentName, null);
+		}
+	}
+
+	/**
+	 * @param keptId the batch deployment not to remove, may be null
+	 */
+	private void removeBatchDeployments(PrintStream logger, String deploymentName, String keptId) throws Exception
+	{
+		for (Map.Entry<String, String> batchDeployment : muleRest.restfullyGetBatchDeployments(deploymentName).entrySet())
+		{
+			if (!batchDeployment.getValue().equals(keptId))
+			{
+				logger.println("....removing " + batchDeployment.getKey());
+				muleRest.restfullyDeleteDeploymentById(batchDeployment.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Creates the new deployment under a temporary {@code <deploymentName>-swap-<timestamp>} name next to the old
+	 * one and activates it. The new deployment targets the same cluster or servers, so activating it replaces the
+	 * applications the old deployment started. Once it completed on all targets the old deployment is deleted and
+	 * the new one renamed to {@code deploymentName}. When it fails, it is deleted and the old deployment is
+	 * activated again to roll the targets back to the previous versions.
+	 * <p>
+	 * Deployments left under a temporary name by an interrupted swap are removed before the new one is created,
+	 * or kept as the current deployment when they already have the requested versions. Without a deployment named
+	 * {@code deploymentName}, e.g. because MMC refused to rename the last swap, the newest temporary one is the
+	 * current deployment: it is only removed once the new one completed, and is the one rolled back to.
+	 */
+	private void deploySwap(PrintStream logger, String clusterOrServerGroupName, String deploymentName, List<String> versionIds,
+	        List<String> applicationNames, DeploymentProgress progress) throws Exception
+	{
+		long swapStart = System.currentTimeMillis();
+		String deploymentId = progress != null ? progress.getDeploymentId(clusterOrServerGroupName) : null;
+		Map<String, String> existing = muleRest.restfullyGetSwapDeployments(deploymentName);
+		String previousName = previousSwapOf(deploymentName, existing, deploymentId);
+		String previousId = previousName != null ? existing.get(previousName) : null;
+		if (deploymentId != null)
+		{
+			logger.println("....re-attaching to swap deployment of " + deploymentName + " (" + deploymentId + ")");
+		} else
+		{
+			for (String name : existing.keySet())
+			{
+				String unchangedId = muleRest.restfullyFindUnchangedDeployment(clusterOrServerGroupName, clusterDeploy, name, versionIds);
+				MmcDeployment unchanged = unchangedId != null ? muleRest.getUnchangedDeployment(unchangedId) : null;
+				if (unchanged != null && unchanged.isDeployed())
+				{
+					logger.println("....deployment " + name + " is already up to date, not redeploying");
+					completeSwap(logger, deploymentName, unchangedId, name);
+					if (progress != null)
+					{
+						progress.completed(clusterOrServerGroupName);
+					}
+					return;
+				}
+			}
+
+			for (Map.Entry<String, String> leftover : existing.entrySet())
+			{
+				if (!leftover.getKey().equals(previousName))
+				{
+					logger.println("....removing " + leftover.getKey() + ", left behind by an earlier swap");
+					muleRest.restfullyDeleteDeploymentById(leftover.getValue());
+				}
+			}
+
+			if (previousName != null && !previousName.equals(deploymentName))
+			{
+				logger.println("...." + previousName + " is the current deployment, it kept its temporary name");
+			}
+			String swapName = MuleRest.swapName(deploymentName);
+			logger.println("....creating " + swapName + " next to " + (previousName != null ? previousName : deploymentName));
+			if (clusterOrServerGroupName != null && clusterDeploy)
+			{
+				deploymentId = muleRest.restfullyCreateClusterDeployment(clusterOrServerGroupName, swapName, versionIds);
+			} else
+			{
+				deploymentId = muleRest.restfullyCreateDeployment(clusterOrServerGroupName, swapName, versionIds);
+			}
+			if (progress != null)
+			{
+				progress.created(clusterOrServerGroupName, deploymentId);
+			}
+		}
+
+		if (progress == null || !progress.isActivated(clusterOrServerGroupName))
+		{
+			muleRest.restfullyDeployDeploymentById(deploymentId);
+			if (progress != null)
+			{
+				progress.activated(clusterOrServerGroupName);
+			}
+		}
+		if (!new DeploymentWaiter(muleRest, logger, waitTimeout * 1000L).await(deploymentId, applicationNames))
+		{
+			logger.println("....new deployment did not complete, removing it");
+			muleRest.restfullyDeleteDeploymentById(deploymentId);
+			if (previousId != null && !previousId.equals(deploymentId))
+			{
+				logger.println("....rolling back to " + previousName);
+				muleRest.restfullyDeployDeploymentById(previousId);
+				if (!new DeploymentWaiter(muleRest, logger, waitTimeout * 1000L).await(previousId, applicationNames))
+				{
+					logger.println("....roll back to " + previousName + " did not complete either");
+				}
+			}
+			throw new Exception("Deployment " + deploymentName + " did not complete on all servers");
+		}
+		long activated = System.currentTimeMillis();
+
+		completeSwap(logger, deploymentName, deploymentId, null);
+		if (progress != null)
+		{
+			progress.completed(clusterOrServerGroupName);
+		}
+		logger.println("Swap deployment finished in " + (System.currentTimeMillis() - swapStart) / 1000.0 + "s, old deployment removed and "
+		        + "new one renamed in " + (System.currentTimeMillis() - activated) / 1000.0 + "s");
+	}
+
+	/**
+	 * @param existing the deployments named {@code deploymentName} or left under a temporary name, see
+	 *        {@link MuleRest#restfullyGetSwapDeployments(String)}
+	 * @param newId the id of the new deployment when re-attaching to it, null otherwise
+	 * @return the name of the deployment a swap replaces: the one named {@code deploymentName}, else the newest
+	 *         temporary one that is not the new deployment; null for a first deployment
+	 */
+	static String previousSwapOf(String deploymentName, Map<String, String> existing, String newId)
+	{
+		if (existing.containsKey(deploymentName)) { return deploymentName; }
+
+		String previousName = null;
+		long previousTimestamp = Long.MIN_VALUE;
+		for (Map.Entry<String, String> deployment : existing.entrySet())
+		{
+			if (deployment.getValue().equals(newId))
+			{
+				continue;
+			}
+			long timestamp;
+			try
+			{
+				timestamp = Long.parseLong(deployment.getKey().substring(deployment.getKey().lastIndexOf('-') + 1));
+			} catch (NumberFormatException e)
+			{
+				timestamp = -1;
+			}
+			if (previousName == null || timestamp > previousTimestamp)
+			{
+				previousName = deployment.getKey();
+				previousTimestamp = timestamp;
+			}
+		}
+		return previousName;
+	}
+
+	/**
+	 * Removes the old deployment and every other temporary one, then gives the current deployment its final name.
+	 * 
+	 * @param currentName the name the current deployment has, null if it was just created under a temporary name
+	 */
+	private void completeSwap(PrintStream logger, String deploymentName, String currentId, String currentName) throws Exception
+	{
+		for (Map.Entry<String, String> old : muleRest.restfullyGetSwapDeployments(deploymentName).entrySet())
+		{
+			if (!old.getValue().equals(currentId))
+			{
+				logger.println("....removing " + old.getKey());
+				muleRest.restfullyDeleteDeploymentById(old.getValue());
+			}
+		}
+		if (deploymentName.equals(currentName)) { return; }
+
+		if (muleRest.restfullyRenameDeployment(currentId, deploymentName))
+		{
+			logger.println("....renamed the new deployment to " + deploymentName);
+		} else
+		{
+			logger.println("....MMC did not rename the new deployment, it keeps its temporary name until the next release");
+		}
+	}
+
+	/**
+	 * Waits for a background resolution, rethrowing its failure as if it had run in the calling thread.
+	 */
+	private static MmcDeploymentTarget join(Future<MmcDeploymentTarget> resolved) throws Exception
+	{
+		try
+		{
+			return resolved.get();
+		} catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof Exception) { throw (Exception) e.getCause(); }
+			throw e;
+		}
+	}
+
+	/**
+	 * @param spec number of servers, or a percentage such as {@code 25%}
+	 * @return the number of servers per batch, at least one and at most all of them
+	 */
+	static int batchSizeOf(String spec, int servers)
+	{
+		int batchSize;
+		try
+		{
+			if (spec.endsWith("%"))
+			{
+				double percent = Double.parseDouble(spec.substring(0, spec.length() - 1).trim());
+				batchSize = (int) Math.ceil(servers * percent / 100);
+			} else
+			{
+				batchSize = Integer.parseInt(spec);
+			}
+		} catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid rolling batch size : " + spec);
+		}
+		if (batchSize <= 0) { throw new IllegalArgumentException("Invalid rolling batch size : " + spec); }
+		return Math.min(batchSize, servers);
+	}
+}
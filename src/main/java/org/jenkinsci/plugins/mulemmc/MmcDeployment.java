@@ -0,0 +1,81 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.codehaus.jackson.JsonNode;
+
+/**
+ * State of a deployment as returned by {@code /deployments/{id}}: its status, target servers or
+ * clusters and the application version ids it contains.
+ */
+public final class MmcDeployment
+{
+	private final String id;
+	private final String name;
+	private final String status;
+	private final Set<String> servers;
+	private final Set<String> clusters;
+	private final Set<String> applications;
+
+	MmcDeployment(JsonNode deploymentNode) {
+		this.id = deploymentNode.path("id").asText();
+		this.name = deploymentNode.path("name").asText();
+		this.status = deploymentNode.path("status").asText();
+		this.servers = texts(deploymentNode.path("servers"));
+		this.clusters = texts(deploymentNode.path("clusters"));
+		this.applications = texts(deploymentNode.path("applications"));
+	}
+
+	private static Set<String> texts(JsonNode arrayNode)
+	{
+		Set<String> texts = new TreeSet<String>();
+		for (JsonNode node : arrayNode)
+		{
+			// entries are either plain ids or objects carrying an id
+			texts.add(node.isObject() ? node.path("id").asText() : node.asText());
+		}
+		return Collections.unmodifiableSet(texts);
+	}
+
+	public String getId()
+	{
+		return id;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public String getStatus()
+	{
+		return status;
+	}
+
+	public Set<String> getServers()
+	{
+		return servers;
+	}
+
+	public Set<String> getClusters()
+	{
+		return clusters;
+	}
+
+	public Set<String> getApplications()
+	{
+		return applications;
+	}
+
+	public boolean isDeployed()
+	{
+		return "DEPLOYED".equalsIgnoreCase(status) || "SUCCESSFUL".equalsIgnoreCase(status);
+	}
+
+	public boolean isFailed()
+	{
+		return status.toUpperCase().contains("FAIL");
+	}
+}
@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A cluster or server group resolved to its ids together with the deployment it currently has under a given
+ * name, see {@link MuleRest#restfullyResolveTarget(String, boolean, String)}. Resolving does not depend on the
+ * archive being deployed, so it can run while the archive is uploaded.
+ */
+public final class MmcDeploymentTarget
+{
+	private final String name;
+	private final boolean cluster;
+	private final Set<String> targetIds;
+	private final String deploymentName;
+	private final String existingDeploymentId;
+	private final MmcDeployment existingDeployment;
+	private final long resolveMillis;
+
+	/**
+	 * @param existingDeploymentId null when there is no deployment of that name yet
+	 * @param existingDeployment null when there is none or it could not be read
+	 */
+	MmcDeploymentTarget(String name, boolean cluster, Set<String> targetIds, String deploymentName, String existingDeploymentId,
+	        MmcDeployment existingDeployment, long resolveMillis) {
+		this.name = name;
+		this.cluster = cluster;
+		this.targetIds = Collections.unmodifiableSet(new TreeSet<String>(targetIds));
+		this.deploymentName = deploymentName;
+		this.existingDeploymentId = existingDeploymentId;
+		this.existingDeployment = existingDeployment;
+		this.resolveMillis = resolveMillis;
+	}
+
+	/**
+	 * @return the cluster or server group name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	public boolean isCluster()
+	{
+		return cluster;
+	}
+
+	/**
+	 * @return "clusters" or "servers", the field of the deployment holding the target ids
+	 */
+	public String getTargetField()
+	{
+		return cluster ? "clusters" : "servers";
+	}
+
+	/**
+	 * @return the cluster id, or the ids of the servers of the group
+	 */
+	public Set<String> getTargetIds()
+	{
+		return targetIds;
+	}
+
+	public String getDeploymentName()
+	{
+		return deploymentName;
+	}
+
+	public String getExistingDeploymentId()
+	{
+		return existingDeploymentId;
+	}
+
+	public MmcDeployment getExistingDeployment()
+	{
+		return existingDeployment;
+	}
+
+	/**
+	 * @return how long resolving took
+	 */
+	public long getResolveMillis()
+	{
+		return resolveMillis;
+	}
+}
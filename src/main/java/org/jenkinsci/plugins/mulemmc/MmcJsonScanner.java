@@ -0,0 +1,575 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Incremental scanner for the MMC list responses ({@code {"total": n, "data": [...]}}).
+ * <p>
+ * Unlike {@code ObjectMapper.readTree} it never builds the whole document: it only reads the
+ * fields it is looking for, skips every other subtree and lookups return as soon as the match is
+ * found. Memory use is bounded by the size of a single list entry, not by the size of the listing.
+ */
+final class MmcJsonScanner
+{
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	static
+	{
+		// MuleRest decides whether the rest of an abandoned response is drained or the connection closed
+		JSON_FACTORY.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+	}
+
+	/**
+	 * What a scan learned about one page of a paged listing.
+	 */
+	static final class Page
+	{
+		private int entries;
+		private long total = -1;
+		private final Set<String> keys = new HashSet<String>();
+
+		/**
+		 * @return the entries of the data array read so far
+		 */
+		int getEntries()
+		{
+			return entries;
+		}
+
+		/**
+		 * @return the {@code total} of the listing if it came before the data array, -1 otherwise
+		 */
+		long getTotal()
+		{
+			return total;
+		}
+
+		/**
+		 * @return the ids of the entries read, or their names for listings without ids
+		 */
+		Set<String> getKeys()
+		{
+			return keys;
+		}
+	}
+
+	private MmcJsonScanner() {
+	}
+
+	/**
+	 * @return the id of the first entry having the given name, or null
+	 */
+	static String findIdByName(InputStream in, String name) throws IOException
+	{
+		return findIdByName(in, name, null);
+	}
+
+	/**
+	 * @param page receives the entries read, may be null
+	 */
+	static String findIdByName(InputStream in, String name, Page page) throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return null; }
+			while (nextEntry(parser, page))
+			{
+				String entryName = null;
+				String entryId = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME)
+				{
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("name".equals(field) && value.isScalarValue())
+					{
+						entryName = parser.getText();
+					} else if ("id".equals(field) && value.isScalarValue())
+					{
+						entryId = parser.getText();
+					} else
+					{
+						parser.skipChildren();
+					}
+					if (entryId != null && entryName != null)
+					{
+						break;
+					}
+				}
+				addKey(page, entryId != null ? entryId : entryName);
+				if (name.equals(entryName)) { return entryId; }
+				skipRestOfObject(parser);
+			}
+			return null;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * @return the ids of all entries indexed by name, the first entry wins when names repeat
+	 */
+	static Map<String, String> indexIdsByName(InputStream in) throws IOException
+	{
+		return indexIdsByName(in, new HashMap<String, String>(), null);
+	}
+
+	/**
+	 * Adds the entries of one page of a listing to the index built from the previous pages.
+	 * 
+	 * @param page receives the entries read, may be null
+	 */
+	static Map<String, String> indexIdsByName(InputStream in, Map<String, String> ids, Page page) throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return ids; }
+			while (nextEntry(parser, page))
+			{
+				String entryName = null;
+				String entryId = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME)
+				{
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("name".equals(field) && value.isScalarValue())
+					{
+						entryName = parser.getText();
+					} else if ("id".equals(field) && value.isScalarValue())
+					{
+						entryId = parser.getText();
+					} else
+					{
+						parser.skipChildren();
+					}
+				}
+				addKey(page, entryId != null ? entryId : entryName);
+				if (entryName != null && !ids.containsKey(entryName))
+				{
+					ids.put(entryName, entryId);
+				}
+			}
+			return ids;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * @return the ids of all entries
+	 */
+	static Set<String> readIds(InputStream in) throws IOException
+	{
+		return readIds(in, new TreeSet<String>(), null);
+	}
+
+	/**
+	 * @param ids receives the ids
+	 * @param page receives the entries read, may be null
+	 */
+	static Set<String> readIds(InputStream in, Set<String> ids, Page page) throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return ids; }
+			while (nextEntry(parser, page))
+			{
+				String id = readStringField(parser, "id");
+				addKey(page, id);
+				if (id != null)
+				{
+					ids.add(id);
+				}
+			}
+			return ids;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * @return the ids of the servers that are members of the given server group
+	 */
+	static Set<String> findServersInGroup(InputStream in, String serverGroup) throws IOException
+	{
+		return findServersInGroup(in, serverGroup, new TreeSet<String>(), null);
+	}
+
+	/**
+	 * @param serverIds receives the ids of the members
+	 * @param page receives the entries read, may be null
+	 */
+	static Set<String> findServersInGroup(InputStream in, String serverGroup, Set<String> serverIds, Page page) throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return serverIds; }
+			List<String> groups = new ArrayList<String>();
+			while (nextEntry(parser, page))
+			{
+				String serverId = readServer(parser, groups);
+				addKey(page, serverId);
+				if (groups.contains(serverGroup))
+				{
+					serverIds.add(serverId);
+				}
+			}
+			return serverIds;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * @return the ids of all servers indexed by the name of each server group they belong to
+	 */
+	static Map<String, Set<String>> indexServersByGroup(InputStream in) throws IOException
+	{
+		return indexServersByGroup(in, new HashMap<String, Set<String>>(), null);
+	}
+
+	/**
+	 * Adds the servers of one page of the listing to the index built from the previous pages.
+	 * 
+	 * @param page receives the entries read, may be null
+	 */
+	static Map<String, Set<String>> indexServersByGroup(InputStream in, Map<String, Set<String>> serversByGroup, Page page) throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return serversByGroup; }
+			List<String> groups = new ArrayList<String>();
+			while (nextEntry(parser, page))
+			{
+				String serverId = readServer(parser, groups);
+				addKey(page, serverId);
+				for (String group : groups)
+				{
+					Set<String> groupServers = serversByGroup.get(group);
+					if (groupServers == null)
+					{
+						groupServers = new TreeSet<String>();
+						serversByGroup.put(group, groupServers);
+					}
+					groupServers.add(serverId);
+				}
+			}
+			return serversByGroup;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * Reads the ids of the application versions contained in any entry of the {@code /deployments} listing.
+	 * Entries without an {@code applications} array are not taken for empty deployments: their ids are
+	 * collected so the caller can read the applications of each of them.
+	 * 
+	 * @param applicationIds receives the ids
+	 * @param withoutApplications receives the ids of the deployments whose entry has no applications
+	 * @param page receives the entries read, may be null
+	 * @throws IOException if an entry has neither applications nor an id
+	 */
+	static Set<String> readDeployedApplicationIds(InputStream in, Set<String> applicationIds, Set<String> withoutApplications, Page page)
+	        throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return applicationIds; }
+			while (nextEntry(parser, page))
+			{
+				String deploymentId = null;
+				boolean applications = false;
+				while (parser.nextToken() == JsonToken.FIELD_NAME)
+				{
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("id".equals(field) && value.isScalarValue())
+					{
+						deploymentId = parser.getText();
+					} else if ("applications".equals(field) && value == JsonToken.START_ARRAY)
+					{
+						applications = true;
+						// entries are either plain ids or objects carrying an id
+						for (JsonToken application = parser.nextToken(); application != null && application != JsonToken.END_ARRAY; application = parser
+						        .nextToken())
+						{
+							String applicationId = application == JsonToken.START_OBJECT ? readStringField(parser, "id")
+							        : application.isScalarValue() ? parser.getText() : null;
+							if (applicationId == null)
+							{
+								parser.skipChildren();
+							} else
+							{
+								applicationIds.add(applicationId);
+							}
+						}
+					} else
+					{
+						parser.skipChildren();
+					}
+				}
+				addKey(page, deploymentId);
+				if (!applications)
+				{
+					if (deploymentId == null) { throw new IOException("Deployment listed without applications nor id"); }
+					withoutApplications.add(deploymentId);
+				}
+			}
+			return applicationIds;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * Reads the whole {@code /repository} listing into application name to version name to version id.
+	 */
+	static Map<String, Map<String, String>> indexApplicationVersions(InputStream in) throws IOException
+	{
+		return indexApplicationVersions(in, new HashMap<String, Map<String, String>>(), null);
+	}
+
+	/**
+	 * Adds the applications of one page of the listing to the index built from the previous pages.
+	 * 
+	 * @param page receives the entries read, may be null
+	 */
+	static Map<String, Map<String, String>> indexApplicationVersions(InputStream in, Map<String, Map<String, String>> applications, Page page)
+	        throws IOException
+	{
+		JsonParser parser = JSON_FACTORY.createJsonParser(in);
+		try
+		{
+			if (!toDataArray(parser, page)) { return applications; }
+			while (nextEntry(parser, page))
+			{
+				String applicationName = null;
+				Map<String, String> versions = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME)
+				{
+					String field = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if ("name".equals(field) && value.isScalarValue())
+					{
+						applicationName = parser.getText();
+					} else if ("versions".equals(field) && value == JsonToken.START_ARRAY)
+					{
+						versions = readVersions(parser);
+					} else
+					{
+						parser.skipChildren();
+					}
+				}
+				addKey(page, applicationName);
+				if (applicationName != null && versions != null && !applications.containsKey(applicationName))
+				{
+					applications.put(applicationName, versions);
+				}
+			}
+			return applications;
+		} finally
+		{
+			parser.close();
+		}
+	}
+
+	/**
+	 * Positions the parser on the start of the {@code data} array.
+	 *
+	 * @return false if the response has no data array
+	 */
+	static boolean toDataArray(JsonParser parser) throws IOException
+	{
+		return toDataArray(parser, null);
+	}
+
+	/**
+	 * @param page receives the {@code total} of the listing when it comes first, may be null
+	 */
+	static boolean toDataArray(JsonParser parser, Page page) throws IOException
+	{
+		if (parser.nextToken() != JsonToken.START_OBJECT) { return false; }
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("data".equals(field) && value == JsonToken.START_ARRAY) { return true; }
+			if (page != null && "total".equals(field) && value == JsonToken.VALUE_NUMBER_INT)
+			{
+				page.total = parser.getLongValue();
+			}
+			parser.skipChildren();
+		}
+		return false;
+	}
+
+	/**
+	 * Advances to the next object of the current array, skipping values that are not objects.
+	 *
+	 * @return false at the end of the array
+	 */
+	static boolean nextEntry(JsonParser parser) throws IOException
+	{
+		JsonToken token = parser.nextToken();
+		while (token != null && token != JsonToken.END_ARRAY)
+		{
+			if (token == JsonToken.START_OBJECT) { return true; }
+			parser.skipChildren();
+			token = parser.nextToken();
+		}
+		return false;
+	}
+
+	/**
+	 * Advances to the next entry of the data array, counting it in the page.
+	 * 
+	 * @param page may be null
+	 */
+	static boolean nextEntry(JsonParser parser, Page page) throws IOException
+	{
+		if (!nextEntry(parser)) { return false; }
+		if (page != null)
+		{
+			page.entries++;
+		}
+		return true;
+	}
+
+	/**
+	 * Records the key of an entry in the page, so paging can tell a page repeating the previous ones.
+	 * 
+	 * @param page may be null
+	 * @param key may be null for an entry without id nor name
+	 */
+	private static void addKey(Page page, String key)
+	{
+		if (page != null && key != null)
+		{
+			page.keys.add(key);
+		}
+	}
+
+	/**
+	 * Skips the remaining fields of an object after the scan broke out of its field loop.
+	 */
+	static void skipRestOfObject(JsonParser parser) throws IOException
+	{
+		if (parser.getCurrentToken() == JsonToken.END_OBJECT) { return; }
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			parser.nextToken();
+			parser.skipChildren();
+		}
+	}
+
+	/**
+	 * Reads a server entry.
+	 *
+	 * @param groups receives the names of the server groups of the server
+	 * @return the id of the server
+	 */
+	private static String readServer(JsonParser parser, List<String> groups) throws IOException
+	{
+		groups.clear();
+		String serverId = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if ("id".equals(field) && value.isScalarValue())
+			{
+				serverId = parser.getText();
+			} else if ("groups".equals(field) && value == JsonToken.START_ARRAY)
+			{
+				while (nextEntry(parser))
+				{
+					String groupName = readStringField(parser, "name");
+					if (groupName != null)
+					{
+						groups.add(groupName);
+					}
+				}
+			} else
+			{
+				parser.skipChildren();
+			}
+		}
+		return serverId;
+	}
+
+	private static Map<String, String> readVersions(JsonParser parser) throws IOException
+	{
+		Map<String, String> versions = new HashMap<String, String>();
+		while (nextEntry(parser))
+		{
+			String versionName = null;
+			String versionId = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME)
+			{
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if ("name".equals(field) && value.isScalarValue())
+				{
+					versionName = parser.getText();
+				} else if ("id".equals(field) && value.isScalarValue())
+				{
+					versionId = parser.getText();
+				} else
+				{
+					parser.skipChildren();
+				}
+			}
+			if (versionName != null && !versions.containsKey(versionName))
+			{
+				versions.put(versionName, versionId);
+			}
+		}
+		return Collections.unmodifiableMap(versions);
+	}
+
+	/**
+	 * Reads one string field of the current object and skips everything else in it.
+	 */
+	private static String readStringField(JsonParser parser, String name) throws IOException
+	{
+		String result = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME)
+		{
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if (name.equals(field) && value.isScalarValue())
+			{
+				result = parser.getText();
+			} else
+			{
+				parser.skipChildren();
+			}
+		}
+		return result;
+	}
+}
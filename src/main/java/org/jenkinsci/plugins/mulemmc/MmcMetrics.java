@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Latency and throughput of the REST operations called on one MMC, see {@link MmcOperationStats}.
+ * <p>
+ * {@link #forMmc(URL)} returns the statistics collected since Jenkins started, shown by
+ * {@link MmcMetricsRootAction}. Builds additionally collect their own calls in a
+ * {@link MmcMetricsAction}.
+ */
+@ExportedBean(defaultVisibility = 2)
+public final class MmcMetrics
+{
+	private static final Map<String, MmcMetrics> registry = new TreeMap<String, MmcMetrics>();
+
+	private final String mmcUrl;
+	private final ConcurrentMap<String, MmcOperationStats> operations = new ConcurrentHashMap<String, MmcOperationStats>();
+
+	MmcMetrics(String mmcUrl) {
+		this.mmcUrl = mmcUrl;
+	}
+
+	/**
+	 * @return the statistics of all calls to the given MMC since Jenkins started
+	 */
+	public static MmcMetrics forMmc(URL mmcUrl)
+	{
+		String key = mmcUrl.toExternalForm();
+		synchronized (registry)
+		{
+			MmcMetrics metrics = registry.get(key);
+			if (metrics == null)
+			{
+				metrics = new MmcMetrics(key);
+				registry.put(key, metrics);
+			}
+			return metrics;
+		}
+	}
+
+	/**
+	 * @return the statistics of all MMCs called since Jenkins started, ordered by URL
+	 */
+	public static List<MmcMetrics> all()
+	{
+		synchronized (registry)
+		{
+			return new ArrayList<MmcMetrics>(registry.values());
+		}
+	}
+
+	/**
+	 * @param operation method and path template of the call, e.g. {@code GET /deployments/{id}}
+	 * @param failed whether the call failed with a transport error or an error response
+	 */
+	void record(String operation, long millis, boolean failed, long bytes)
+	{
+		MmcOperationStats stats = operations.get(operation);
+		if (stats == null)
+		{
+			MmcOperationStats created = new MmcOperationStats(operation);
+			stats = operations.putIfAbsent(operation, created);
+			if (stats == null)
+			{
+				stats = created;
+			}
+		}
+		stats.record(millis, failed, bytes);
+	}
+
+	@Exported
+	public String getMmcUrl()
+	{
+		return mmcUrl;
+	}
+
+	/**
+	 * @return the statistics of each operation, ordered by operation
+	 */
+	@Exported(inline = true)
+	public List<MmcOperationStats> getOperations()
+	{
+		return new ArrayList<MmcOperationStats>(new TreeMap<String, MmcOperationStats>(operations).values());
+	}
+
+	public boolean isEmpty()
+	{
+		return operations.isEmpty();
+	}
+}
@@ -0,0 +1,65 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.model.Action;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Latency and throughput of the MMC REST calls made by a build, shown on the build page and exported
+ * through the remote API.
+ */
+@ExportedBean
+public class MmcMetricsAction implements Action
+{
+	private final List<MmcMetrics> mmcs = new ArrayList<MmcMetrics>();
+
+	/**
+	 * @return the statistics of the calls this build made to the given MMC
+	 */
+	synchronized MmcMetrics forMmc(URL mmcUrl)
+	{
+		String key = mmcUrl.toExternalForm();
+		for (MmcMetrics metrics : mmcs)
+		{
+			if (metrics.getMmcUrl().equals(key)) { return metrics; }
+		}
+		MmcMetrics metrics = new MmcMetrics(key);
+		mmcs.add(metrics);
+		return metrics;
+	}
+
+	@Exported(inline = true)
+	public synchronized List<MmcMetrics> getMmcs()
+	{
+		return new ArrayList<MmcMetrics>(mmcs);
+	}
+
+	public synchronized boolean isEmpty()
+	{
+		for (MmcMetrics metrics : mmcs)
+		{
+			if (!metrics.isEmpty()) { return false; }
+		}
+		return true;
+	}
+
+	public String getIconFileName()
+	{
+		return null;
+	}
+
+	public String getDisplayName()
+	{
+		return "MMC Call Metrics";
+	}
+
+	public String getUrlName()
+	{
+		return "mmcMetrics";
+	}
+}
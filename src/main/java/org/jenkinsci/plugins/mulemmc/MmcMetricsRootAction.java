@@ -0,0 +1,46 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.Extension;
+import hudson.model.Api;
+import hudson.model.RootAction;
+
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Jenkins-wide latency and throughput of the MMC REST calls since Jenkins started, at
+ * {@code /mmc-metrics} and {@code /mmc-metrics/api/json}.
+ */
+@Extension
+@ExportedBean
+public class MmcMetricsRootAction implements RootAction
+{
+	@Exported(inline = true)
+	public List<MmcMetrics> getMmcs()
+	{
+		return MmcMetrics.all();
+	}
+
+	public Api getApi()
+	{
+		return new Api(this);
+	}
+
+	public String getIconFileName()
+	{
+		// reachable through its URL and the global configuration, not listed in the side panel
+		return null;
+	}
+
+	public String getDisplayName()
+	{
+		return "MMC Call Metrics";
+	}
+
+	public String getUrlName()
+	{
+		return "mmc-metrics";
+	}
+}
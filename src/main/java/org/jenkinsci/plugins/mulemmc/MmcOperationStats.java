@@ -0,0 +1,151 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Call count, error count, transferred bytes and latency histogram of one MMC REST operation.
+ * <p>
+ * Latencies are counted in logarithmic buckets four per doubling, so a percentile is reported as the
+ * upper bound of its bucket and overstates the exact value by less than 19%. Recording never locks.
+ */
+@ExportedBean(defaultVisibility = 2)
+public final class MmcOperationStats
+{
+	/** Bucket i holds latencies up to {@code 2^(i/4)} ms, the last bucket everything above about 4.6 hours */
+	private static final int BUCKETS_PER_DOUBLING = 4;
+	private static final int BUCKET_COUNT = 24 * BUCKETS_PER_DOUBLING + 1;
+	private static final long[] BUCKET_LIMITS = new long[BUCKET_COUNT];
+
+	static
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			BUCKET_LIMITS[i] = (long) Math.ceil(Math.pow(2, (double) i / BUCKETS_PER_DOUBLING));
+		}
+	}
+
+	private final String operation;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong totalMillis = new AtomicLong();
+	private final AtomicLong maxMillis = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+
+	MmcOperationStats(String operation) {
+		this.operation = operation;
+	}
+
+	void record(long millis, boolean failed, long transferredBytes)
+	{
+		count.incrementAndGet();
+		if (failed)
+		{
+			errors.incrementAndGet();
+		}
+		if (transferredBytes > 0)
+		{
+			bytes.addAndGet(transferredBytes);
+		}
+		totalMillis.addAndGet(millis);
+		long max = maxMillis.get();
+		while (millis > max && !maxMillis.compareAndSet(max, millis))
+		{
+			max = maxMillis.get();
+		}
+		histogram.incrementAndGet(bucketOf(millis));
+	}
+
+	private static int bucketOf(long millis)
+	{
+		for (int i = 0; i < BUCKET_COUNT - 1; i++)
+		{
+			if (millis <= BUCKET_LIMITS[i]) { return i; }
+		}
+		return BUCKET_COUNT - 1;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency in ms that the given share of the calls did not exceed, 0 without calls
+	 */
+	public long getPercentileMillis(double percentile)
+	{
+		long total = 0;
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0) { return 0; }
+
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank) { return Math.min(BUCKET_LIMITS[i], maxMillis.get()); }
+		}
+		return maxMillis.get();
+	}
+
+	@Exported
+	public String getOperation()
+	{
+		return operation;
+	}
+
+	@Exported
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	@Exported
+	public long getErrors()
+	{
+		return errors.get();
+	}
+
+	@Exported
+	public long getBytes()
+	{
+		return bytes.get();
+	}
+
+	@Exported
+	public long getMeanMillis()
+	{
+		long calls = count.get();
+		return calls == 0 ? 0 : totalMillis.get() / calls;
+	}
+
+	@Exported
+	public long getMaxMillis()
+	{
+		return maxMillis.get();
+	}
+
+	@Exported
+	public long getP50Millis()
+	{
+		return getPercentileMillis(50);
+	}
+
+	@Exported
+	public long getP95Millis()
+	{
+		return getPercentileMillis(95);
+	}
+
+	@Exported
+	public long getP99Millis()
+	{
+		return getPercentileMillis(99);
+	}
+}
@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash index of the MMC application repository: application name to version name to version id.
+ * <p>
+ * It is built from a single {@code /repository} download and then kept up to date by {@link MuleRest}
+ * as versions are uploaded or deleted, so repeated lookups during a deployment need no further download.
+ */
+final class MmcRepositoryIndex
+{
+	private final ConcurrentMap<String, ConcurrentMap<String, String>> versionIds = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+	/** version id to {name, version}, to remove deleted versions without scanning */
+	private final ConcurrentMap<String, String[]> versionsById = new ConcurrentHashMap<String, String[]>();
+
+	MmcRepositoryIndex(Map<String, Map<String, String>> applications) {
+		for (Map.Entry<String, Map<String, String>> application : applications.entrySet())
+		{
+			for (Map.Entry<String, String> version : application.getValue().entrySet())
+			{
+				put(application.getKey(), version.getKey(), version.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @return the id of the version of the application, or null if it is not in the repository
+	 */
+	String getVersionId(String name, String version)
+	{
+		Map<String, String> versions = versionIds.get(name);
+		return versions == null ? null : versions.get(version);
+	}
+
+	/**
+	 * @return version name to version id of the application, empty if it is not in the repository
+	 */
+	Map<String, String> getVersions(String name)
+	{
+		Map<String, String> versions = versionIds.get(name);
+		return versions == null ? Collections.<String, String> emptyMap() : Collections.unmodifiableMap(versions);
+	}
+
+	/**
+	 * @return the names of all applications with at least one version
+	 */
+	Set<String> getApplications()
+	{
+		Set<String> applications = new TreeSet<String>();
+		for (Map.Entry<String, ConcurrentMap<String, String>> application : versionIds.entrySet())
+		{
+			if (!application.getValue().isEmpty())
+			{
+				applications.add(application.getKey());
+			}
+		}
+		return applications;
+	}
+
+	void put(String name, String version, String versionId)
+	{
+		if (name == null || version == null || versionId == null) { return; }
+		ConcurrentMap<String, String> versions = versionIds.get(name);
+		if (versions == null)
+		{
+			versionIds.putIfAbsent(name, new ConcurrentHashMap<String, String>());
+			versions = versionIds.get(name);
+		}
+		String previousId = versions.put(version, versionId);
+		if (previousId != null && !previousId.equals(versionId))
+		{
+			versionsById.remove(previousId);
+		}
+		versionsById.put(versionId, new String[] { name, version });
+	}
+
+	void remove(String versionId)
+	{
+		String[] nameAndVersion = versionsById.remove(versionId);
+		if (nameAndVersion == null) { return; }
+		Map<String, String> versions = versionIds.get(nameAndVersion[0]);
+		if (versions != null)
+		{
+			versions.remove(nameAndVersion[1], versionId);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.util.VersionNumber;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes old application versions from the MMC repository: the newest {@code keepVersions} versions of each
+ * application are kept, as is every version contained in a deployment, and the rest is deleted in batches.
+ */
+final class MmcRepositoryRetention
+{
+	static final int DEFAULT_KEEP_VERSIONS = 10;
+	static final int DEFAULT_BATCH_SIZE = 20;
+	static final int DEFAULT_BATCH_DELAY_SECONDS = 5;
+
+	/** newest first, versions compare like Maven versions */
+	private static final Comparator<String> NEWEST_FIRST = new Comparator<String>()
+	{
+		public int compare(String version1, String version2)
+		{
+			int result = new VersionNumber(version2).compareTo(new VersionNumber(version1));
+			return result != 0 ? result : version2.compareTo(version1);
+		}
+	};
+
+	private final MuleRest muleRest;
+
+	private int keepVersions = DEFAULT_KEEP_VERSIONS;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int batchDelaySeconds = DEFAULT_BATCH_DELAY_SECONDS;
+	private boolean dryRun;
+
+	MmcRepositoryRetention(MuleRest muleRest) {
+		this.muleRest = muleRest;
+	}
+
+	/**
+	 * @param keepVersions newest versions kept per application, the default applies when not positive
+	 */
+	void setKeepVersions(int keepVersions)
+	{
+		this.keepVersions = keepVersions > 0 ? keepVersions : DEFAULT_KEEP_VERSIONS;
+	}
+
+	/**
+	 * @param batchSize versions deleted before pausing, the default applies when not positive
+	 */
+	void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+	}
+
+	/**
+	 * @param batchDelaySeconds pause between two batches, 0 for none
+	 */
+	void setBatchDelaySeconds(int batchDelaySeconds)
+	{
+		this.batchDelaySeconds = Math.max(0, batchDelaySeconds);
+	}
+
+	/**
+	 * Only reports what would be deleted.
+	 */
+	void setDryRun(boolean dryRun)
+	{
+		this.dryRun = dryRun;
+	}
+
+	/**
+	 * @param applications comma or newline separated names of the applications to clean up, all of them when empty
+	 * @return the number of versions deleted, or that would be deleted in a dry run
+	 * @throws Exception if the deployed versions could not all be read, before deleting anything, or if a version
+	 *         could not be deleted, after trying all others
+	 */
+	int run(PrintStream logger, String applications) throws Exception
+	{
+		long start = System.currentTimeMillis();
+		Map<String, Map<String, String>> repository = muleRest.restfullyGetRepositoryVersions();
+		// read after the repository, so a version deployed meanwhile is not taken for unused
+		Set<String> deployedVersionIds = muleRest.restfullyGetDeployedVersionIds();
+		List<String> selected = MmcDeployer.targetsOf(applications);
+
+		List<String[]> expired = new ArrayList<String[]>();
+		int kept = 0;
+		int inUse = 0;
+		for (Map.Entry<String, Map<String, String>> application : repository.entrySet())
+		{
+			if (!selected.isEmpty() && !selected.contains(application.getKey()))
+			{
+				continue;
+			}
+			List<String> versions = new ArrayList<String>(application.getValue().keySet());
+			Collections.sort(versions, NEWEST_FIRST);
+			for (int i = 0; i < versions.size(); i++)
+			{
+				String versionId = application.getValue().get(versions.get(i));
+				if (i < keepVersions)
+				{
+					kept++;
+				} else if (deployedVersionIds.contains(versionId))
+				{
+					inUse++;
+					logger.println("....keeping " + application.getKey() + " " + versions.get(i) + ", it is deployed");
+				} else
+				{
+					expired.add(new String[] { application.getKey(), versions.get(i), versionId });
+				}
+			}
+		}
+		logger.println("....repository retention: " + kept + " recent and " + inUse + " deployed versions kept, " + expired.size()
+		        + " versions to delete");
+
+		if (dryRun)
+		{
+			for (String[] version : expired)
+			{
+				logger.println("....would delete " + version[0] + " " + version[1] + " (" + version[2] + ")");
+			}
+			logger.println("Dry run, nothing deleted");
+			return expired.size();
+		}
+
+		int deleted = 0;
+		int failed = 0;
+		for (int i = 0; i < expired.size(); i++)
+		{
+			if (i > 0 && i % batchSize == 0 && batchDelaySeconds > 0)
+			{
+				logger.println("....deleted " + deleted + " of " + expired.size() + ", pausing " + batchDelaySeconds + "s");
+				Thread.sleep(batchDelaySeconds * 1000L);
+			}
+			String[] version = expired.get(i);
+			try
+			{
+				muleRest.restfullyDeleteApplicationById(version[2]);
+				deleted++;
+				logger.println("....deleted " + version[0] + " " + version[1]);
+			} catch (Exception e)
+			{
+				failed++;
+				logger.println("....could not delete " + version[0] + " " + version[1] + ": " + e.getMessage());
+			}
+		}
+		logger.println("Repository retention deleted " + deleted + " versions in " + (System.currentTimeMillis() - start) / 1000.0 + "s");
+		if (failed > 0) { throw new Exception(failed + " of " + expired.size() + " versions could not be deleted"); }
+		return deleted;
+	}
+}
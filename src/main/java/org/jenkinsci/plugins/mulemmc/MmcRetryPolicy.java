@@ -0,0 +1,51 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.util.Random;
+
+/**
+ * Jenkins-wide retry settings for idempotent MMC calls: how often they are retried and the
+ * exponential backoff, with full jitter, between attempts.
+ */
+public final class MmcRetryPolicy
+{
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	public static final int DEFAULT_BASE_DELAY_MILLIS = 500;
+	public static final int DEFAULT_MAX_DELAY_MILLIS = 8000;
+
+	private static final Random random = new Random();
+
+	private static volatile int maxRetries = DEFAULT_MAX_RETRIES;
+	private static volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+	private static volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+	private MmcRetryPolicy() {
+	}
+
+	/**
+	 * @param retries retries after the first attempt, 0 disables retrying
+	 */
+	public static void configure(int retries, int baseDelay, int maxDelay)
+	{
+		maxRetries = Math.max(0, retries);
+		baseDelayMillis = baseDelay > 0 ? baseDelay : DEFAULT_BASE_DELAY_MILLIS;
+		maxDelayMillis = Math.max(baseDelayMillis, maxDelay > 0 ? maxDelay : DEFAULT_MAX_DELAY_MILLIS);
+	}
+
+	public static int getMaxRetries()
+	{
+		return maxRetries;
+	}
+
+	/**
+	 * @param retry 1 for the first retry
+	 * @return a random delay between 0 and base * 2^(retry-1), capped
+	 */
+	public static long delayMillis(int retry)
+	{
+		long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(retry - 1, 20));
+		synchronized (random)
+		{
+			return (long) (random.nextDouble() * ceiling);
+		}
+	}
+}
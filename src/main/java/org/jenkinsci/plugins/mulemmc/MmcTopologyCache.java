@@ -0,0 +1,321 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Per-MMC cache of the topology listings ({@code /servers}, {@code /serverGroups}, {@code /clusters},
+ * {@code /deployments}, the {@code /repository} index and the members of each server group) shared by all builds.
+ * <p>
+ * Each listing is kept as an index built by {@link MuleRest} (name to id, or server group to server ids)
+ * and reused until the configured time-to-live expires or the listing is invalidated. Concurrent builds
+ * missing the same listing wait for a single download instead of each fetching it. Without a configured
+ * time-to-live every listing is requested from MMC again.
+ * <p>
+ * Independently of the time-to-live, the last download of each listing is kept with its validators
+ * ({@code ETag}, {@code Last-Modified} or a digest of the body) so an unchanged listing is not downloaded
+ * again, or without validators keeps the index built from it before, see {@link StoredListing}.
+ */
+public final class MmcTopologyCache
+{
+	/**
+	 * Caching is opt-in: a cached {@code /deployments} listing would hide deployments changed outside Jenkins.
+	 */
+	public static final int DEFAULT_TTL_SECONDS = 0;
+
+	private static final Logger logger = Logger.getLogger(MmcTopologyCache.class.getName());
+
+	private static final Map<String, MmcTopologyCache> caches = new TreeMap<String, MmcTopologyCache>();
+
+	private static volatile long ttlMillis = DEFAULT_TTL_SECONDS * 1000L;
+
+	/**
+	 * The MMC listings held by the cache.
+	 */
+	public enum Listing
+	{
+		SERVERS, SERVER_GROUPS, CLUSTERS, DEPLOYMENTS, REPOSITORY,
+		/** Server ids of one server group, cached per group */
+		GROUP_SERVERS
+	}
+
+	/**
+	 * Builds the index of a listing on a cache miss.
+	 */
+	public interface Loader<T>
+	{
+		T load() throws Exception;
+	}
+
+	/**
+	 * The index built from the last download of a listing and what identifies that download.
+	 */
+	static final class StoredListing
+	{
+		private final String etag;
+		private final String lastModified;
+		private final byte[] digest;
+		private final Object value;
+
+		/**
+		 * @param digest SHA-256 of the body, only needed when MMC sent no validators
+		 */
+		StoredListing(String etag, String lastModified, byte[] digest, Object value) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.digest = digest;
+			this.value = value;
+		}
+
+		String getEtag()
+		{
+			return etag;
+		}
+
+		String getLastModified()
+		{
+			return lastModified;
+		}
+
+		byte[] getDigest()
+		{
+			return digest;
+		}
+
+		Object getValue()
+		{
+			return value;
+		}
+	}
+
+	private static final class Entry
+	{
+		private volatile Object value;
+		private volatile long loadedAt;
+		/** Counts invalidations, incremented without holding the entry lock, which a load keeps */
+		private final AtomicLong generation = new AtomicLong();
+		private volatile StoredListing stored;
+	}
+
+	private final String mmcUrl;
+	private final Map<Listing, Entry> entries = new EnumMap<Listing, Entry>(Listing.class);
+	private final ConcurrentMap<String, Entry> keyedEntries = new ConcurrentHashMap<String, Entry>();
+	private volatile boolean groupServersEndpointAvailable = true;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+
+	private MmcTopologyCache(String mmcUrl) {
+		this.mmcUrl = mmcUrl;
+		for (Listing listing : Listing.values())
+		{
+			entries.put(listing, new Entry());
+		}
+	}
+
+	/**
+	 * @return the cache shared by all builds deploying to the given MMC
+	 */
+	public static MmcTopologyCache forMmc(URL mmcUrl)
+	{
+		String key = mmcUrl.toExternalForm();
+		synchronized (caches)
+		{
+			MmcTopologyCache cache = caches.get(key);
+			if (cache == null)
+			{
+				cache = new MmcTopologyCache(key);
+				caches.put(key, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * @return the caches of all MMCs used since Jenkins started, ordered by URL
+	 */
+	public static List<MmcTopologyCache> all()
+	{
+		synchronized (caches)
+		{
+			return new ArrayList<MmcTopologyCache>(caches.values());
+		}
+	}
+
+	/**
+	 * @param ttlSeconds how long a listing is reused, 0 disables caching
+	 */
+	public static void setTtlSeconds(int ttlSeconds)
+	{
+		ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+	}
+
+	public static boolean isEnabled()
+	{
+		return ttlMillis > 0;
+	}
+
+	/**
+	 * Returns the cached index of the listing, loading it when it is missing or expired.
+	 */
+	public <T> T get(Listing listing, Loader<T> loader) throws Exception
+	{
+		return get(entries.get(listing), listing.toString(), loader);
+	}
+
+	/**
+	 * Returns the cached index of one key of a listing kept per key, such as the members of one server group.
+	 */
+	public <T> T get(Listing listing, String key, Loader<T> loader) throws Exception
+	{
+		String entryKey = listing + "/" + key;
+		Entry entry = keyedEntries.get(entryKey);
+		if (entry == null)
+		{
+			keyedEntries.putIfAbsent(entryKey, new Entry());
+			entry = keyedEntries.get(entryKey);
+		}
+		return get(entry, entryKey, loader);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(Entry entry, String label, Loader<T> loader) throws Exception
+	{
+		long ttl = ttlMillis;
+		if (ttl <= 0) { return loader.load(); }
+
+		synchronized (entry)
+		{
+			if (entry.value != null && System.currentTimeMillis() - entry.loadedAt < ttl)
+			{
+				hits.incrementAndGet();
+				return (T) entry.value;
+			}
+
+			misses.incrementAndGet();
+			logger.fine(">>>>get loading " + label + " of " + mmcUrl);
+			long generation = entry.generation.get();
+			T value = loader.load();
+			// do not keep a listing that was invalidated while it was loading
+			if (generation == entry.generation.get())
+			{
+				entry.loadedAt = System.currentTimeMillis();
+				entry.value = value;
+				// an invalidation between the check and the store has already cleared the value, clear it again
+				if (generation != entry.generation.get())
+				{
+					entry.value = null;
+				}
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * @return the cached index of the listing if it is loaded and not expired, without loading it
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T peek(Listing listing)
+	{
+		Entry entry = entries.get(listing);
+		Object value = entry.value;
+		if (value == null || System.currentTimeMillis() - entry.loadedAt >= ttlMillis) { return null; }
+		return (T) value;
+	}
+
+	public void invalidate(Listing listing)
+	{
+		logger.fine(">>>>invalidate " + listing + " of " + mmcUrl);
+		invalidate(entries.get(listing));
+		for (Map.Entry<String, Entry> keyed : keyedEntries.entrySet())
+		{
+			if (keyed.getKey().startsWith(listing + "/"))
+			{
+				invalidate(keyed.getValue());
+			}
+		}
+	}
+
+	private static void invalidate(Entry entry)
+	{
+		entry.generation.incrementAndGet();
+		entry.value = null;
+	}
+
+	public void invalidateAll()
+	{
+		for (Listing listing : Listing.values())
+		{
+			invalidate(listing);
+		}
+		groupServersEndpointAvailable = true;
+	}
+
+	/**
+	 * @return false once MMC turned out not to serve {@code /serverGroups/{id}/servers}, until the next refresh
+	 */
+	boolean isGroupServersEndpointAvailable()
+	{
+		return groupServersEndpointAvailable;
+	}
+
+	void groupServersEndpointUnavailable()
+	{
+		groupServersEndpointAvailable = false;
+	}
+
+	/**
+	 * @return the last download of the listing, kept even after it expired or was invalidated
+	 */
+	StoredListing getStoredListing(Listing listing)
+	{
+		return entries.get(listing).stored;
+	}
+
+	/**
+	 * @param stored the last download of the listing, null to forget it
+	 */
+	void storeListing(Listing listing, StoredListing stored)
+	{
+		entries.get(listing).stored = stored;
+	}
+
+	/**
+	 * Counts a reload that reused the stored listing because it had not changed.
+	 */
+	void notModified()
+	{
+		notModified.incrementAndGet();
+	}
+
+	public String getMmcUrl()
+	{
+		return mmcUrl;
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return how many misses reused the stored listing because MMC reported it unchanged
+	 */
+	public long getNotModified()
+	{
+		return notModified.get();
+	}
+}
@@ -4,38 +4,45 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.ws.rs.core.Response.Status;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpException;
-import org.apache.commons.httpclient.UsernamePasswordCredentials;
-import org.apache.commons.httpclient.auth.AuthPolicy;
-import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.FilePart;
 import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
 import org.apache.commons.httpclient.methods.multipart.Part;
 import org.apache.commons.httpclient.methods.multipart.StringPart;
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerationException;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.jenkinsci.plugins.mulemmc.MmcTopologyCache.Listing;
+import org.jenkinsci.plugins.mulemmc.MmcTopologyCache.StoredListing;
 
 import java.util.logging.Logger;
 
@@ -44,6 +51,30 @@ public class MuleRest
 	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 	private static final Logger logger = Logger.getLogger(MuleRest.class.getName());
 	private static final String SNAPSHOT = "SNAPSHOT";
+	/** Responses up to this size are drained to keep the connection alive when abandoned early */
+	private static final long DRAIN_LIMIT = 64 * 1024;
+	/** Bytes read after a scanner stopped before taking the response for not fully read */
+	private static final int TRAILING_LIMIT = 256;
+	/** Status codes telling that MMC does not serve an endpoint, missing from JAX-RS 1.1 */
+	private static final int METHOD_NOT_ALLOWED = 405;
+	private static final int NOT_IMPLEMENTED = 501;
+	/** Pages read from one listing before giving up on an MMC that never ends it */
+	private static final int MAX_LISTING_PAGES = 10000;
+	private static final String SWAP_SUFFIX = "-swap-";
+	private static final String BATCH_SUFFIX = "-batch-";
+	private static final String OPERATION_PARAM = "mmc.operation";
+	private static final String STARTED_PARAM = "mmc.started";
+	private static final String ADMISSION_PARAM = "mmc.admission";
+
+	private static volatile int listingPageSize;
+
+	/**
+	 * @param pageSize entries requested per page of a listing, 0 downloads each listing in a single response
+	 */
+	public static void setListingPageSize(int pageSize)
+	{
+		listingPageSize = Math.max(0, pageSize);
+	}
 
 	private URL mmcUrl;
 	private String username;
@@ -53,11 +84,16 @@ public class MuleRest
 		this.mmcUrl = mmcUrl;
 		this.username = username;
 		this.password = password;
+		this.mmcHttpClient = MmcConnectionRegistry.createHttpClient(mmcUrl, username, password);
+		this.topologyCache = MmcTopologyCache.forMmc(mmcUrl);
+		this.circuitBreaker = MmcCircuitBreaker.forMmc(mmcUrl);
+		this.admission = MmcAdmission.forMmc(mmcUrl);
+		this.metrics = MmcMetrics.forMmc(mmcUrl);
 		logger.fine("MMC URL: {}, Username: {}" + " " + mmcUrl + " " + username);
 
 	}
 
-	private void processResponseCode(int code) throws Exception
+	private static void processResponseCode(int code) throws Exception
 	{
 		logger.fine(">>>>processResponseCode " + code);
 
@@ -85,60 +121,218 @@ public class MuleRest
 
 	public String restfullyCreateDeployment(String serverGroup, String name, String versionId) throws Exception
 	{
-		logger.fine(">>>>restfullyCreateDeployment " + serverGroup + " " + name + " " + versionId);
+		return restfullyCreateDeployment(serverGroup, name, Collections.singletonList(versionId));
+	}
+
+	/**
+	 * Creates one deployment of several application versions on all servers of the group.
+	 */
+	public String restfullyCreateDeployment(String serverGroup, String name, Collection<String> versionIds) throws Exception
+	{
+		logger.fine(">>>>restfullyCreateDeployment " + serverGroup + " " + name + " " + versionIds);
 
 		Set<String> serversIds = restfullyGetServers(serverGroup);
 		if (serversIds.isEmpty()) { throw new IllegalArgumentException("No server found into group : " + serverGroup); }
 
+		String unchangedId = findUnchangedDeployment(name, "servers", serversIds, versionIds);
+		if (unchangedId != null) { return unchangedId; }
+
 		// delete existing deployment before creating new one
 		restfullyDeleteDeployment(name);
 
-		HttpClient httpClient = configureHttpClient();
+		String request = deploymentRequest(name, "servers", serversIds, versionIds);
+		logger.fine(">>>>restfullyCreateDeployment request" + request );
+
+		String id = restfullyPostDeployment(request);
+		
+		logger.fine(">>>>restfullyCreateDeployment created id " + id );
+		
+		return id;
+
+	}
+
+	/**
+	 * Creates one deployment of several application versions on the given servers, e.g. one batch of a rolling deployment.
+	 */
+	public String restfullyCreateServerDeployment(String name, Collection<String> serverIds, Collection<String> versionIds) throws Exception
+	{
+		logger.fine(">>>>restfullyCreateServerDeployment " + name + " " + serverIds + " " + versionIds);
+
+		if (serverIds.isEmpty()) { throw new IllegalArgumentException("No server given for deployment : " + name); }
+
+		String unchangedId = findUnchangedDeployment(name, "servers", serverIds, versionIds);
+		if (unchangedId != null) { return unchangedId; }
+
+		// delete existing deployment before creating new one
+		restfullyDeleteDeployment(name);
+
+		return restfullyPostDeployment(deploymentRequest(name, "servers", serverIds, versionIds));
+	}
+
+	/**
+	 * Looks for an existing deployment of the given name that already has exactly the requested targets and
+	 * application versions and did not fail, so it does not need to be deleted and created again.
+	 * 
+	 * @param targetField "servers" or "clusters"
+	 * @return the id of the unchanged deployment, see {@link #getUnchangedDeployment(String)}, or null
+	 */
+	private String findUnchangedDeployment(String name, String targetField, Collection<String> targetIds, Collection<String> versionIds)
+	        throws Exception
+	{
+		String deploymentId = restfullyGetDeploymentIdByName(name);
+		if (deploymentId == null) { return null; }
+
+		MmcDeployment existing = readExistingDeployment(deploymentId);
+		if (existing == null || !isUnchanged(existing, targetField, targetIds, versionIds)) { return null; }
+
+		logger.fine(">>>>findUnchangedDeployment " + name + " is up to date " + deploymentId);
+		unchangedDeployments.put(deploymentId, existing);
+		return deploymentId;
+	}
+
+	/**
+	 * @return the deployment, or null if it cannot be read
+	 */
+	private MmcDeployment readExistingDeployment(String deploymentId)
+	{
+		try
+		{
+			return restfullyGetDeployment(deploymentId);
+		} catch (Exception e)
+		{
+			// the id may come from a cached listing of a deployment removed meanwhile
+			logger.fine(">>>>readExistingDeployment cannot read deployment " + deploymentId + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static boolean isUnchanged(MmcDeployment existing, String targetField, Collection<String> targetIds, Collection<String> versionIds)
+	{
+		Set<String> targets = "clusters".equals(targetField) ? existing.getClusters() : existing.getServers();
+		Set<String> otherTargets = "clusters".equals(targetField) ? existing.getServers() : existing.getClusters();
+		return !existing.isFailed() && otherTargets.isEmpty() && targets.equals(new TreeSet<String>(targetIds))
+		        && existing.getApplications().equals(new TreeSet<String>(versionIds));
+	}
+
+	/**
+	 * Resolves a cluster or server group to its ids and looks up the deployment of the given name. Nothing of it
+	 * depends on the archive, so it can run while the archive is uploaded and
+	 * {@link #restfullyCreateDeployment(MmcDeploymentTarget, Collection)} then only deletes and posts.
+	 */
+	public MmcDeploymentTarget restfullyResolveTarget(String clusterOrServerGroupName, boolean cluster, String deploymentName) throws Exception
+	{
+		logger.fine(">>>>restfullyResolveTarget " + clusterOrServerGroupName + " " + cluster + " " + deploymentName);
+
+		long start = System.currentTimeMillis();
+		Set<String> targetIds;
+		if (cluster)
+		{
+			String clusterId = restfullyGetClusterId(clusterOrServerGroupName);
+			if (clusterId == null || clusterId.isEmpty()) { throw new IllegalArgumentException("Cluster not found : " + clusterOrServerGroupName); }
+			targetIds = Collections.singleton(clusterId);
+		} else
+		{
+			targetIds = restfullyGetServers(clusterOrServerGroupName);
+			if (targetIds.isEmpty()) { throw new IllegalArgumentException("No server found into group : " + clusterOrServerGroupName); }
+		}
+
+		String existingId = restfullyGetDeploymentIdByName(deploymentName);
+		MmcDeployment existing = existingId != null ? readExistingDeployment(existingId) : null;
+		return new MmcDeploymentTarget(clusterOrServerGroupName, cluster, targetIds, deploymentName, existingId, existing,
+		        System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Creates the deployment of a resolved target, replacing the deployment it had under that name unless it
+	 * already has exactly these versions, see {@link #getUnchangedDeployment(String)}.
+	 */
+	public String restfullyCreateDeployment(MmcDeploymentTarget target, Collection<String> versionIds) throws Exception
+	{
+		logger.fine(">>>>restfullyCreateDeployment " + target.getName() + " " + target.getDeploymentName() + " " + versionIds);
 
+		MmcDeployment existing = target.getExistingDeployment();
+		if (existing != null && isUnchanged(existing, target.getTargetField(), target.getTargetIds(), versionIds))
+		{
+			logger.fine(">>>>restfullyCreateDeployment " + target.getDeploymentName() + " is up to date " + target.getExistingDeploymentId());
+			unchangedDeployments.put(target.getExistingDeploymentId(), existing);
+			return target.getExistingDeploymentId();
+		}
+
+		// delete existing deployment before creating new one
+		if (target.getExistingDeploymentId() != null)
+		{
+			restfullyDeleteDeploymentById(target.getExistingDeploymentId());
+		}
+
+		return restfullyPostDeployment(deploymentRequest(target.getDeploymentName(), target.getTargetField(), target.getTargetIds(), versionIds));
+	}
+
+	/**
+	 * @return the existing deployment a create call of this instance returned instead of creating an
+	 *         identical one, or null if the deployment was created
+	 */
+	public MmcDeployment getUnchangedDeployment(String deploymentId)
+	{
+		return unchangedDeployments.get(deploymentId);
+	}
+
+	/**
+	 * Builds the body of a {@code POST /deployments}.
+	 * 
+	 * @param targetField "servers" or "clusters"
+	 */
+	static String deploymentRequest(String name, String targetField, Collection<String> targetIds, Collection<String> versionIds) throws IOException
+	{
 		StringWriter stringWriter = new StringWriter();
-		JsonFactory jfactory = new JsonFactory();
-		JsonGenerator jGenerator = jfactory.createJsonGenerator(stringWriter);
+		JsonGenerator jGenerator = OBJECT_MAPPER.getJsonFactory().createJsonGenerator(stringWriter);
 		jGenerator.writeStartObject(); // {
 		jGenerator.writeStringField("name", name); // "name" : name
-		jGenerator.writeFieldName("servers"); // "servers" :
+		jGenerator.writeFieldName(targetField); // "servers" :
 		jGenerator.writeStartArray(); // [
-		for (String serverId : serversIds)
+		for (String targetId : targetIds)
 		{
-			jGenerator.writeString(serverId); // "serverId"
+			jGenerator.writeString(targetId); // "serverId"
 		}
 		jGenerator.writeEndArray(); // ]
 		jGenerator.writeFieldName("applications"); // "applications" :
 		jGenerator.writeStartArray(); // [
-		jGenerator.writeString(versionId); // "applicationId"
+		for (String versionId : versionIds)
+		{
+			jGenerator.writeString(versionId); // "applicationId"
+		}
 		jGenerator.writeEndArray(); // ]
 		jGenerator.writeEndObject(); // }
 		jGenerator.close();
+		return stringWriter.toString();
+	}
 
+	/**
+	 * @return the id of the created deployment
+	 */
+	private String restfullyPostDeployment(String request) throws Exception
+	{
 		PostMethod post = new PostMethod(mmcUrl + "/deployments");
 		post.setDoAuthentication(true);
-		StringRequestEntity sre = new StringRequestEntity(stringWriter.toString(), "application/json", null);
-		logger.fine(">>>>restfullyCreateDeployment request" + stringWriter.toString() );
-		
-		post.setRequestEntity(sre);
+		post.setRequestEntity(new StringRequestEntity(request, "application/json", null));
 
-		int statusCode = httpClient.executeMethod(post);
-
-		if (statusCode!=200)  
-			logger.fine(">>>>restfullyCreateDeployment error response "+post.getResponseBodyAsString());
-		
-		processResponseCode(statusCode);
-		
-		InputStream responseStream = post.getResponseBodyAsStream();
-		
-		
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
-
-		String id = jsonNode.path("id").asText();
-		
-		logger.fine(">>>>restfullyCreateDeployment created id " + id );
-		
-		return id;
+		try
+		{
+			int statusCode = execute("POST /deployments", post);
 
+			if (statusCode!=200)  
+				logger.fine(">>>>restfullyPostDeployment error response "+post.getResponseBodyAsString());
+			
+			processResponseCode(statusCode);
+			
+			InputStream responseStream = post.getResponseBodyAsStream();
+			
+			JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
+			topologyCache.invalidate(Listing.DEPLOYMENTS);
+			return jsonNode.path("id").asText();
+		} finally
+		{
+			release(post);
+		}
 	}
 
 	public void restfullyDeleteDeployment(String name) throws Exception
@@ -157,13 +351,24 @@ public class MuleRest
 	{
 		logger.fine(">>>>restfullyDeleteDeploymentById " + deploymentId);
 
-		HttpClient httpClient = configureHttpClient();
-
 		DeleteMethod delete = new DeleteMethod(mmcUrl + "/deployments/" + deploymentId);
 
-		int statusCode = httpClient.executeMethod(delete);
+		try
+		{
+			int statusCode = execute("DELETE /deployments/{id}", delete);
 
-		processResponseCode(statusCode);
+			topologyCache.invalidate(Listing.DEPLOYMENTS);
+			// the id may come from a cached listing of a deployment removed meanwhile
+			if (statusCode == Status.NOT_FOUND.getStatusCode())
+			{
+				logger.fine(">>>>restfullyDeleteDeploymentById deployment already removed " + deploymentId);
+				return;
+			}
+			processResponseCode(statusCode);
+		} finally
+		{
+			release(delete);
+		}
 
 	}
 
@@ -171,317 +376,1410 @@ public class MuleRest
 	{
 		logger.fine(">>>>restfullyDeployDeploymentById " + deploymentId);
 
-		HttpClient httpClient = configureHttpClient();
-
 		PostMethod post = new PostMethod(mmcUrl + "/deployments/" + deploymentId+ "/deploy");
 		post.setDoAuthentication(true);
 
-		int statusCode = httpClient.executeMethod(post);
+		try
+		{
+			int statusCode = execute("POST /deployments/{id}/deploy", post);
 
-		processResponseCode(statusCode);
+			processResponseCode(statusCode);
+		} finally
+		{
+			release(post);
+		}
 
 	}
 
-	public String restfullyGetDeploymentIdByName(String name) throws Exception
+	public MmcDeployment restfullyGetDeployment(String deploymentId) throws Exception
 	{
-		logger.fine(">>>>restfullyGetDeploymentIdByName " + name);
+		logger.fine(">>>>restfullyGetDeployment " + deploymentId);
 
-		HttpClient httpClient = configureHttpClient();
-
-		GetMethod get = new GetMethod(mmcUrl + "/deployments");
+		GetMethod get = new GetMethod(mmcUrl + "/deployments/" + deploymentId);
 
-		int statusCode = httpClient.executeMethod(get);
+		try
+		{
+			int statusCode = execute("GET /deployments/{id}", get);
 
-		processResponseCode(statusCode);
+			processResponseCode(statusCode);
 
-		InputStream responseStream = get.getResponseBodyAsStream();
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
-		JsonNode deploymentsNode = jsonNode.path("data");
-		for (JsonNode deploymentNode : deploymentsNode)
+			InputStream responseStream = get.getResponseBodyAsStream();
+			return new MmcDeployment(OBJECT_MAPPER.readTree(responseStream));
+		} finally
 		{
-			if (name.equals(deploymentNode.path("name").asText())) { return deploymentNode.path("id").asText();
-
-			}
+			release(get);
 		}
-		return null;
 	}
 
-	public String restfullyGetApplicationId(String name, String version) throws Exception
+	/**
+	 * Reads the status of applications on one server or cluster. An application only counts once the
+	 * version being deployed runs, the version it replaces being started already.
+	 * 
+	 * @param targetPath {@code /servers/{id}} or {@code /clusters/{id}}
+	 * @param versionIds the application version ids of the deployment
+	 * @return "STARTED" when all applications are started, the status of the first failed application,
+	 *         or null while any of them is still in progress
+	 * @throws Exception if an application is started but MMC does not tell which version, so the new one
+	 *         cannot be told from the one it replaces
+	 */
+	public String restfullyGetApplicationsStatus(String targetPath, Collection<String> applicationNames, Collection<String> versionIds)
+	        throws Exception
 	{
-		logger.fine(">>>>restfullyGetApplicationId " + name + " " + version);
-
-		HttpClient httpClient = configureHttpClient();
+		logger.fine(">>>>restfullyGetApplicationsStatus " + targetPath + " " + applicationNames + " " + versionIds);
 
-		GetMethod get = new GetMethod(mmcUrl + "/repository");
+		GetMethod get = new GetMethod(mmcUrl + targetPath + "/applications");
 
-		int statusCode = httpClient.executeMethod(get);
+		Map<String, String> statusByName = new HashMap<String, String>();
+		Set<String> unversioned = new TreeSet<String>();
+		try
+		{
+			int statusCode = execute(operationOf(targetPath) + "/applications", get);
 
-		processResponseCode(statusCode);
+			processResponseCode(statusCode);
 
-		InputStream responseStream = get.getResponseBodyAsStream();
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
-		JsonNode applicationsNode = jsonNode.path("data");
-		for (JsonNode applicationNode : applicationsNode)
-		{
-			if (name.equals(applicationNode.path("name").asText()))
+			InputStream responseStream = get.getResponseBodyAsStream();
+			for (JsonNode applicationNode : OBJECT_MAPPER.readTree(responseStream).path("data"))
 			{
-				JsonNode versionsNode = applicationNode.path("versions");
-				for (JsonNode versionNode : versionsNode)
+				String name = applicationNode.path("name").asText();
+				String versionId = versionIdOf(applicationNode);
+				if (versionId == null)
 				{
-					if (version.equals(versionNode.path("name").asText())) { return versionNode.get("id").asText(); }
+					unversioned.add(name);
+					statusByName.put(name, applicationNode.path("status").asText());
+				} else if (versionIds.contains(versionId))
+				{
+					statusByName.put(name, applicationNode.path("status").asText());
 				}
 			}
+		} finally
+		{
+			release(get);
 		}
 
-		return null;
+		String result = "STARTED";
+		for (String applicationName : applicationNames)
+		{
+			String status = statusByName.get(applicationName);
+			if (status != null && status.toUpperCase().contains("FAIL")) { return status; }
+			if (!"STARTED".equalsIgnoreCase(status))
+			{
+				result = null;
+			} else if (unversioned.contains(applicationName))
+			{
+				throw new Exception(targetPath + "/applications does not tell the version of " + applicationName
+				        + ", a previous version may be the one started");
+			}
+		}
+		return result;
 	}
 
-	public final String restfullyGetServerGroupId(String serverGroup) throws Exception
+	/**
+	 * @return the version id of an entry of {@code /servers/{id}/applications} or {@code /clusters/{id}/applications},
+	 *         null if it has none
+	 */
+	private static String versionIdOf(JsonNode applicationNode)
 	{
-		logger.fine(">>>>restfullyGetServerGroupId " + serverGroup);
-
-		HttpClient httpClient = configureHttpClient();
-
-		GetMethod get = new GetMethod(mmcUrl + "/serverGroups");
+		JsonNode versionId = applicationNode.path("versionId");
+		if (versionId.isMissingNode() || versionId.isNull())
+		{
+			versionId = applicationNode.path("version").path("id");
+		}
+		return versionId.isValueNode() && !versionId.isNull() && versionId.asText().length() > 0 ? versionId.asText() : null;
+	}
 
-		int statusCode = httpClient.executeMethod(get);
+	public String restfullyGetDeploymentIdByName(final String name) throws Exception
+	{
+		logger.fine(">>>>restfullyGetDeploymentIdByName " + name);
 
-		String serverGroupId = null;
+		if (!MmcTopologyCache.isEnabled()) { return restfullyFindIdByName("/deployments", name); }
 
-		processResponseCode(statusCode);
+		return getDeploymentIndex().get(name);
+	}
 
-		InputStream responseStream = get.getResponseBodyAsStream();
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
-		JsonNode groupsNode = jsonNode.path("data");
-		for (JsonNode groupNode : groupsNode)
+	/**
+	 * @return deployment name to id of all deployments
+	 */
+	private Map<String, String> getDeploymentIndex() throws Exception
+	{
+		MmcTopologyCache.Loader<Map<String, String>> loader = new MmcTopologyCache.Loader<Map<String, String>>()
 		{
-			if (serverGroup.equals(groupNode.path("name").asText()))
+			public Map<String, String> load() throws Exception
 			{
-				serverGroupId = groupNode.path("id").asText();
+				return restfullyGetNameIndex(Listing.DEPLOYMENTS, "/deployments");
 			}
-		}
-
-		if (serverGroupId == null) { throw new IllegalArgumentException("no server group found having the name " + serverGroup); }
-
-		return serverGroupId;
+		};
+		return MmcTopologyCache.isEnabled() ? topologyCache.get(Listing.DEPLOYMENTS, loader) : loader.load();
 	}
 
-	public Set<String> restfullyGetServers(String serverGroup) throws Exception
+	/**
+	 * @return name to id of the deployment with the given name and of the deployments left under a temporary
+	 *         {@code <name>-swap-<timestamp>} name by earlier swaps
+	 */
+	public Map<String, String> restfullyGetSwapDeployments(String name) throws Exception
 	{
-		logger.fine(">>>>restfullyGetServers " + serverGroup);
+		logger.fine(">>>>restfullyGetSwapDeployments " + name);
 
-		HttpClient httpClient = configureHttpClient();
-
-		GetMethod get = new GetMethod(mmcUrl + "/servers");
-
-		int statusCode = httpClient.executeMethod(get);
-
-		Set<String> serversId = new TreeSet<String>();
-		processResponseCode(statusCode);
-
-		InputStream responseStream = get.getResponseBodyAsStream();
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
-		JsonNode serversNode = jsonNode.path("data");
-		for (JsonNode serverNode : serversNode)
+		Map<String, String> swapDeployments = new TreeMap<String, String>();
+		for (Map.Entry<String, String> deployment : getDeploymentIndex().entrySet())
 		{
-			String serverId = serverNode.path("id").asText();
-
-			JsonNode groupsNode = serverNode.path("groups");
-			for (JsonNode groupNode : groupsNode)
+			if (deployment.getKey().equals(name) || deployment.getKey().startsWith(name + SWAP_SUFFIX))
 			{
-				if (serverGroup.equals(groupNode.path("name").asText()))
-				{
-					serversId.add(serverId);
-				}
+				swapDeployments.put(deployment.getKey(), deployment.getValue());
 			}
 		}
+		return swapDeployments;
+	}
 
-		return serversId;
+	/**
+	 * @return the temporary name under which a swap creates the new deployment
+	 */
+	public static String swapName(String name)
+	{
+		return name + SWAP_SUFFIX + System.currentTimeMillis();
 	}
 
-	public String restfullyUploadRepository(String name, String version, File packageFile) throws Exception
+	/**
+	 * @return name to id of the deployments left under a {@code <name>-batch-<n>} name by a rolling deployment
+	 */
+	public Map<String, String> restfullyGetBatchDeployments(String name) throws Exception
 	{
-		logger.fine(">>>>restfullyUploadRepository " + name + " " + version + " " + packageFile);
+		logger.fine(">>>>restfullyGetBatchDeployments " + name);
 
-		// delete application first
-		if (isSnapshotVersion(version))
+		Map<String, String> batchDeployments = new TreeMap<String, String>();
+		for (Map.Entry<String, String> deployment : getDeploymentIndex().entrySet())
 		{
-			logger.fine("delete " + name + " " + version);
-			restfullyDeleteApplication(name, version);
+			if (deployment.getKey().startsWith(name + BATCH_SUFFIX))
+			{
+				batchDeployments.put(deployment.getKey(), deployment.getValue());
+			}
 		}
+		return batchDeployments;
+	}
 
-		HttpClient httpClient = configureHttpClient();
-
-		PostMethod post = new PostMethod(mmcUrl + "/repository");
-		post.setDoAuthentication(true);
-
-		Part[] parts = { new FilePart("file", packageFile), new StringPart("name", name),
-		        new StringPart("version", version) };
-
-		MultipartRequestEntity multipartEntity = new MultipartRequestEntity(parts, post.getParams());
-		post.setRequestEntity(multipartEntity);
-
-		int statusCode = httpClient.executeMethod(post);
-
-		//in the case of a conflict status code, use the pre-existing application
-		if (statusCode != Status.CONFLICT.getStatusCode()) {
-			processResponseCode(statusCode);
+	/**
+	 * @param batch the number of the batch, starting at 1
+	 * @return the name of the deployment of one batch of a rolling deployment
+	 */
+	public static String batchName(String name, int batch)
+	{
+		return name + BATCH_SUFFIX + batch;
+	}
 
-		} else{
-			logger.info("ARTIFACT ALREADY EXISTS in MMC. Creating Deployment using Pre-Existing Artifact (Not-Overwriting)");
-			post.releaseConnection();
-			return restfullyGetApplicationId(name, version);
+	/**
+	 * Checks whether the deployment of the given name already has the requested versions on the servers of the
+	 * group or on the cluster, see {@link #getUnchangedDeployment(String)}.
+	 * 
+	 * @return the id of the unchanged deployment, or null
+	 */
+	public String restfullyFindUnchangedDeployment(String clusterOrServerGroupName, boolean cluster, String name, Collection<String> versionIds)
+	        throws Exception
+	{
+		if (cluster)
+		{
+			String clusterId = restfullyGetClusterId(clusterOrServerGroupName);
+			if (clusterId == null) { throw new IllegalArgumentException("Cluster not found : " + clusterOrServerGroupName); }
+			return findUnchangedDeployment(name, "clusters", Collections.singletonList(clusterId), versionIds);
 		}
-
-		String responseObject = post.getResponseBodyAsString();
-		post.releaseConnection();
-
-		ObjectMapper mapper = new ObjectMapper();
-		JsonNode result = mapper.readTree(responseObject);
-		return result.path("versionId").asText();
-
+		return findUnchangedDeployment(name, "servers", restfullyGetServers(clusterOrServerGroupName), versionIds);
 	}
 
-	public void restfullyDeleteApplicationById(String applicationVersionId) throws Exception
+	/**
+	 * Renames a deployment, keeping its targets and applications.
+	 * 
+	 * @return false if MMC refused the rename, e.g. because it does not support updating deployments
+	 */
+	public boolean restfullyRenameDeployment(String deploymentId, String name) throws Exception
 	{
-		logger.fine(">>>>restfullyDeleteApplicationById " + applicationVersionId);
-
-		HttpClient httpClient = configureHttpClient();
+		logger.fine(">>>>restfullyRenameDeployment " + deploymentId + " " + name);
 
-		DeleteMethod delete = new DeleteMethod(mmcUrl + "/repository/" + applicationVersionId);
-
-		int statusCode = httpClient.executeMethod(delete);
+		MmcDeployment deployment = restfullyGetDeployment(deploymentId);
+		boolean cluster = !deployment.getClusters().isEmpty();
+		return restfullyPutDeployment(deploymentId, deploymentRequest(name, cluster ? "clusters" : "servers", cluster ? deployment.getClusters()
+		        : deployment.getServers(), deployment.getApplications()));
+	}
 
-		processResponseCode(statusCode);
+	/**
+	 * Replaces the name, servers and applications of a deployment without activating it again, e.g. to take
+	 * the servers of a finished batch of a rolling deployment out of the previous deployment.
+	 * 
+	 * @return false if MMC refused the update, e.g. because it does not support updating deployments
+	 */
+	public boolean restfullyUpdateServerDeployment(String deploymentId, String name, Collection<String> serverIds, Collection<String> versionIds)
+	        throws Exception
+	{
+		logger.fine(">>>>restfullyUpdateServerDeployment " + deploymentId + " " + name + " " + serverIds + " " + versionIds);
 
+		return restfullyPutDeployment(deploymentId, deploymentRequest(name, "servers", serverIds, versionIds));
 	}
 
-	public void restfullyDeleteApplication(String applicationName, String version) throws Exception
+	/**
+	 * @return false if MMC refused the update
+	 */
+	private boolean restfullyPutDeployment(String deploymentId, String request) throws Exception
 	{
-		logger.fine(">>>>restfullyDeleteApplication " + applicationName + "" + version);
+		PutMethod put = new PutMethod(mmcUrl + "/deployments/" + deploymentId);
+		put.setDoAuthentication(true);
+		put.setRequestEntity(new StringRequestEntity(request, "application/json", null));
+		try
+		{
+			int statusCode = execute("PUT /deployments/{id}", put);
 
-		String applicationVersionId = restfullyGetApplicationId(applicationName, version);
-		if (applicationVersionId != null)
+			topologyCache.invalidate(Listing.DEPLOYMENTS);
+			if (statusCode != Status.OK.getStatusCode())
+			{
+				logger.fine(">>>>restfullyPutDeployment " + deploymentId + " refused with status " + statusCode);
+				return false;
+			}
+			return true;
+		} finally
 		{
-			restfullyDeleteApplicationById(applicationVersionId);
+			release(put);
 		}
 	}
 
-	protected boolean isSnapshotVersion(String version)
+	public String restfullyGetApplicationId(String name, String version) throws Exception
 	{
-		return version.contains(SNAPSHOT);
+		logger.fine(">>>>restfullyGetApplicationId " + name + " " + version);
+
+		return getRepositoryIndex().getVersionId(name, version);
 	}
 
 	/**
-	 * @param clusterId
-	 * @param theName
-	 * @param versionId
-	 * @return
-	 * @throws Exception
+	 * @return the repository index shared through the topology cache, or kept by this instance when the cache is disabled
 	 */
-	public String restfullyCreateClusterDeployment(String clusterName, String name, String versionId) throws Exception
+	private MmcRepositoryIndex getRepositoryIndex() throws Exception
 	{
-		 logger.fine(">>>>restfullyCreateClusterDeployment  "+clusterName +" "+ name + " " + versionId);
-
+		MmcTopologyCache.Loader<MmcRepositoryIndex> loader = new MmcTopologyCache.Loader<MmcRepositoryIndex>()
+		{
+			public MmcRepositoryIndex load() throws Exception
+			{
+				return restfullyGetRepositoryIndex();
+			}
+		};
+		if (MmcTopologyCache.isEnabled()) { return topologyCache.get(Listing.REPOSITORY, loader); }
+
+		synchronized (this)
+		{
+			if (localRepositoryIndex == null)
+			{
+				localRepositoryIndex = loader.load();
+			}
+			return localRepositoryIndex;
+		}
+	}
+
+	/**
+	 * @return the repository index if it is already loaded, null otherwise
+	 */
+	private MmcRepositoryIndex peekRepositoryIndex()
+	{
+		if (MmcTopologyCache.isEnabled()) { return topologyCache.<MmcRepositoryIndex> peek(Listing.REPOSITORY); }
+		return localRepositoryIndex;
+	}
+
+	private void invalidateRepositoryIndex()
+	{
+		topologyCache.invalidate(Listing.REPOSITORY);
+		localRepositoryIndex = null;
+	}
+
+	/**
+	 * Downloads {@code /repository} once and indexes every application version.
+	 */
+	private MmcRepositoryIndex restfullyGetRepositoryIndex() throws Exception
+	{
+		return new MmcRepositoryIndex(restfullyScanListing(Listing.REPOSITORY, "/repository", new ResponseScanner<Map<String, Map<String, String>>>()
+		{
+			private final Map<String, Map<String, String>> applications = new HashMap<String, Map<String, String>>();
+
+			public Map<String, Map<String, String>> scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException
+			{
+				return MmcJsonScanner.indexApplicationVersions(responseStream, applications, page);
+			}
+		}));
+	}
+
+	public final String restfullyGetServerGroupId(String serverGroup) throws Exception
+	{
+		logger.fine(">>>>restfullyGetServerGroupId " + serverGroup);
+
+		String serverGroupId;
+		if (MmcTopologyCache.isEnabled())
+		{
+			Map<String, String> serverGroupIds = topologyCache.get(Listing.SERVER_GROUPS, new MmcTopologyCache.Loader<Map<String, String>>()
+			{
+				public Map<String, String> load() throws Exception
+				{
+					return restfullyGetNameIndex(Listing.SERVER_GROUPS, "/serverGroups");
+				}
+			});
+			serverGroupId = serverGroupIds.get(serverGroup);
+		} else
+		{
+			serverGroupId = restfullyFindIdByName("/serverGroups", serverGroup);
+		}
+
+		if (serverGroupId == null) { throw new IllegalArgumentException("no server group found having the name " + serverGroup); }
+
+		return serverGroupId;
+	}
+
+	/**
+	 * @return the ids of the servers of the group, read from {@code /serverGroups/{id}/servers} or, if MMC does
+	 *         not serve it, from the whole {@code /servers} listing
+	 */
+	public Set<String> restfullyGetServers(final String serverGroup) throws Exception
+	{
+		logger.fine(">>>>restfullyGetServers " + serverGroup);
+
+		if (topologyCache.isGroupServersEndpointAvailable())
+		{
+			Set<String> groupServers;
+			if (MmcTopologyCache.isEnabled())
+			{
+				groupServers = topologyCache.get(Listing.GROUP_SERVERS, serverGroup, new MmcTopologyCache.Loader<Set<String>>()
+				{
+					public Set<String> load() throws Exception
+					{
+						return restfullyGetGroupServers(serverGroup, false);
+					}
+				});
+			} else
+			{
+				groupServers = restfullyGetGroupServers(serverGroup, true);
+			}
+			if (groupServers != null) { return new TreeSet<String>(groupServers); }
+			logger.info("MMC " + mmcUrl + " does not serve /serverGroups/{id}/servers, scanning /servers instead");
+			topologyCache.groupServersEndpointUnavailable();
+		}
+
+		if (!MmcTopologyCache.isEnabled())
+		{
+			return restfullyScan("/servers", new ResponseScanner<Set<String>>()
+			{
+				private final Set<String> serverIds = new TreeSet<String>();
+
+				public Set<String> scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException
+				{
+					return MmcJsonScanner.findServersInGroup(responseStream, serverGroup, serverIds, page);
+				}
+			}, false);
+		}
+
+		Map<String, Set<String>> serversByGroup = topologyCache.get(Listing.SERVERS, new MmcTopologyCache.Loader<Map<String, Set<String>>>()
+		{
+			public Map<String, Set<String>> load() throws Exception
+			{
+				return restfullyGetServersByGroup();
+			}
+		});
+
+		Set<String> serversId = new TreeSet<String>();
+		Set<String> groupServers = serversByGroup.get(serverGroup);
+		if (groupServers != null)
+		{
+			serversId.addAll(groupServers);
+		}
+		return serversId;
+	}
+
+	/**
+	 * Reads the members of one server group from the group-scoped endpoint. A group recreated under the same name
+	 * gets a new id, so a 404 for a cached id is retried with the id resolved again, and only a 404 for a fresh id
+	 * means MMC does not serve the endpoint.
+	 * 
+	 * @param freshId true if the group id is not taken from the cache
+	 * @return the server ids, or null if MMC does not serve the endpoint
+	 */
+	private Set<String> restfullyGetGroupServers(String serverGroup, boolean freshId) throws Exception
+	{
+		String serverGroupId = restfullyGetServerGroupId(serverGroup);
+
+		String path = "/serverGroups/" + serverGroupId + "/servers";
+		int limit = listingPageSize;
+		GetMethod get = new GetMethod(mmcUrl + pagePath(path, 0, limit));
+		Set<String> serverIds = new TreeSet<String>();
+		MmcJsonScanner.Page page = new MmcJsonScanner.Page();
+		boolean staleId = false;
+		try
+		{
+			int statusCode = execute("GET /serverGroups/{id}/servers", get);
+
+			if (statusCode == Status.NOT_FOUND.getStatusCode() && !freshId)
+			{
+				staleId = true;
+			} else if (statusCode == Status.NOT_FOUND.getStatusCode() || statusCode == METHOD_NOT_ALLOWED || statusCode == NOT_IMPLEMENTED)
+			{
+				return null;
+			} else
+			{
+				processResponseCode(statusCode);
+				MmcJsonScanner.readIds(get.getResponseBodyAsStream(), serverIds, page);
+			}
+		} finally
+		{
+			release(get);
+		}
+		if (staleId)
+		{
+			topologyCache.invalidate(Listing.SERVER_GROUPS);
+			return restfullyGetGroupServers(serverGroup, true);
+		}
+
+		if (limit > 0 && !isLastPage(page, page.getEntries(), limit))
+		{
+			final Set<String> pagedServerIds = serverIds;
+			restfullyScanPages(path, "GET /serverGroups/{id}/servers", new ResponseScanner<Set<String>>()
+			{
+				public Set<String> scan(InputStream responseStream, MmcJsonScanner.Page nextPage) throws IOException
+				{
+					return MmcJsonScanner.readIds(responseStream, pagedServerIds, nextPage);
+				}
+			}, page, false);
+		}
+		return Collections.unmodifiableSet(serverIds);
+	}
+
+	/**
+	 * Downloads {@code /servers} and indexes the server ids by server group name.
+	 */
+	private Map<String, Set<String>> restfullyGetServersByGroup() throws Exception
+	{
+		return Collections.unmodifiableMap(restfullyScanListing(Listing.SERVERS, "/servers", new ResponseScanner<Map<String, Set<String>>>()
+		{
+			private final Map<String, Set<String>> serversByGroup = new HashMap<String, Set<String>>();
+
+			public Map<String, Set<String>> scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException
+			{
+				return MmcJsonScanner.indexServersByGroup(responseStream, serversByGroup, page);
+			}
+		}));
+	}
+
+	/**
+	 * Downloads a listing such as {@code /deployments} and indexes the ids of its entries by name.
+	 * When several entries share a name the first one wins.
+	 */
+	private Map<String, String> restfullyGetNameIndex(Listing listing, String path) throws Exception
+	{
+		return Collections.unmodifiableMap(restfullyScanListing(listing, path, new ResponseScanner<Map<String, String>>()
+		{
+			private final Map<String, String> ids = new HashMap<String, String>();
+
+			public Map<String, String> scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException
+			{
+				return MmcJsonScanner.indexIdsByName(responseStream, ids, page);
+			}
+		}));
+	}
+
+	/**
+	 * Scans a listing such as {@code /deployments} for the first entry with the given name,
+	 * without downloading the rest of the listing once it is found.
+	 */
+	private String restfullyFindIdByName(String path, final String name) throws Exception
+	{
+		return restfullyScan(path, new ResponseScanner<String>()
+		{
+			public String scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException
+			{
+				return MmcJsonScanner.findIdByName(responseStream, name, page);
+			}
+		}, true);
+	}
+
+	/**
+	 * Reads the body of a GET response incrementally. For a paged listing it is called once per page and
+	 * accumulates the results of all pages read so far.
+	 */
+	private interface ResponseScanner<T>
+	{
+		/**
+		 * @param page receives the entries of the page read
+		 */
+		T scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException;
+	}
+
+	/**
+	 * @param stopAtMatch for a paged listing, stop at the first page where the scanner returned non-null
+	 */
+	private <T> T restfullyScan(String path, ResponseScanner<T> scanner, boolean stopAtMatch) throws Exception
+	{
+		if (listingPageSize > 0) { return restfullyScanPages(path, "GET " + path, scanner, null, stopAtMatch); }
+
+		GetMethod get = new GetMethod(mmcUrl + path);
+
+		boolean fullyRead = true;
+		try
+		{
+			int statusCode = execute("GET " + path, get);
+
+			processResponseCode(statusCode);
+
+			InputStream responseStream = get.getResponseBodyAsStream();
+			T result = scanner.scan(responseStream, new MmcJsonScanner.Page());
+			// the scanner stops as soon as it has its answer
+			fullyRead = isFullyRead(responseStream);
+			return result;
+		} finally
+		{
+			if (!fullyRead)
+			{
+				abortLargeResponse(get);
+			}
+			release(get);
+		}
+	}
+
+	/**
+	 * Reads a listing page by page through a {@link PagedListing}.
+	 * 
+	 * @param firstPage the first page when it was already read, null to start with it
+	 * @param stopAtMatch stop at the first page where the scanner returned non-null instead of reading all pages
+	 * @return the result of the scanner after the last page read
+	 */
+	private <T> T restfullyScanPages(String path, String operation, ResponseScanner<T> scanner, MmcJsonScanner.Page firstPage,
+	        boolean stopAtMatch) throws Exception
+	{
+		PagedListing<T> pages = new PagedListing<T>(path, operation, scanner, firstPage);
+		T result = null;
+		while (pages.hasNext())
+		{
+			result = pages.next();
+			if (stopAtMatch && result != null)
+			{
+				logger.fine(">>>>restfullyScanPages found a match in " + path + " after " + pages.getPagesRead() + " pages");
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Lazy iterator over the pages of a listing requested with {@code offset} and {@code limit}. A page is only
+	 * downloaded when {@link #next()} is called, so a lookup that stops at a match leaves the remaining pages
+	 * alone. The listing ends with a page shorter than the limit, or once {@code total} entries were read when
+	 * MMC sends the total before the data. An MMC ignoring {@code offset} and {@code limit} must not keep the
+	 * iteration going either: a page longer than the limit is taken for the whole listing, and a page whose
+	 * entries were all read before ends it. Past {@link MuleRest#MAX_LISTING_PAGES} pages the listing is given up on.
+	 */
+	private final class PagedListing<T>
+	{
+		private final String path;
+		private final String operation;
+		private final ResponseScanner<T> scanner;
+		private final int limit = listingPageSize;
+		private final Set<String> keysRead = new HashSet<String>();
+		private int offset;
+		private int pagesRead;
+		private boolean more = true;
+
+		/**
+		 * @param firstPage the first page when the caller already read it, null otherwise
+		 */
+		PagedListing(String path, String operation, ResponseScanner<T> scanner, MmcJsonScanner.Page firstPage) {
+			this.path = path;
+			this.operation = operation;
+			this.scanner = scanner;
+			if (firstPage != null)
+			{
+				offset = firstPage.getEntries();
+				pagesRead = 1;
+				keysRead.addAll(firstPage.getKeys());
+			}
+		}
+
+		boolean hasNext()
+		{
+			return more;
+		}
+
+		int getPagesRead()
+		{
+			return pagesRead;
+		}
+
+		/**
+		 * Downloads and scans the next page.
+		 * 
+		 * @return the result of the scanner
+		 */
+		T next() throws Exception
+		{
+			if (pagesRead >= MAX_LISTING_PAGES) { throw new Exception(path + " did not end after " + pagesRead + " pages of " + limit); }
+
+			GetMethod get = new GetMethod(mmcUrl + pagePath(path, offset, limit));
+
+			boolean fullyRead = true;
+			try
+			{
+				int statusCode = execute(operation, get);
+
+				processResponseCode(statusCode);
+
+				InputStream responseStream = get.getResponseBodyAsStream();
+				MmcJsonScanner.Page page = new MmcJsonScanner.Page();
+				T result = scanner.scan(responseStream, page);
+				// the scanner stops as soon as it has its answer, the page then counts as the last one
+				fullyRead = isFullyRead(responseStream);
+				pagesRead++;
+				offset += page.getEntries();
+				boolean repeated = !page.getKeys().isEmpty() && !keysRead.addAll(page.getKeys());
+				if (repeated)
+				{
+					logger.warning(path + " page at offset " + (offset - page.getEntries())
+					        + " repeats entries already read, taking it for the last one");
+				}
+				more = fullyRead && !repeated && !isLastPage(page, offset, limit);
+				return result;
+			} finally
+			{
+				if (!fullyRead)
+				{
+					abortLargeResponse(get);
+				}
+				release(get);
+			}
+		}
+	}
+
+	/**
+	 * @param limit entries per page, 0 to request the whole listing
+	 * @return the path requesting the page starting at {@code offset}
+	 */
+	private static String pagePath(String path, int offset, int limit)
+	{
+		if (limit <= 0) { return path; }
+		return path + (path.indexOf('?') < 0 ? '?' : '&') + "offset=" + offset + "&limit=" + limit;
+	}
+
+	/**
+	 * @param offset entries read including this page
+	 */
+	private static boolean isLastPage(MmcJsonScanner.Page page, int offset, int limit)
+	{
+		// more entries than asked for means MMC ignored the limit and sent the whole listing
+		return page.getEntries() != limit || (page.getTotal() >= 0 && offset >= page.getTotal());
+	}
+
+	/**
+	 * Downloads and scans a whole listing unless it did not change since the last download, in which case the
+	 * result of that download is returned again. The request is conditional on the {@code ETag} and
+	 * {@code Last-Modified} validators of the last response; without validators the body is digested while it is
+	 * scanned and the result of the last download is kept when the digest did not change.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T restfullyScanListing(Listing listing, String path, ResponseScanner<T> scanner) throws Exception
+	{
+		if (listingPageSize > 0)
+		{
+			// validators of single pages do not tell whether the whole listing changed
+			topologyCache.storeListing(listing, null);
+			return restfullyScanPages(path, "GET " + path, scanner, null, false);
+		}
+
+		StoredListing stored = topologyCache.getStoredListing(listing);
+		GetMethod get = new GetMethod(mmcUrl + path);
+		if (stored != null && stored.getEtag() != null)
+		{
+			get.setRequestHeader("If-None-Match", stored.getEtag());
+		}
+		if (stored != null && stored.getLastModified() != null)
+		{
+			get.setRequestHeader("If-Modified-Since", stored.getLastModified());
+		}
+
+		try
+		{
+			int statusCode = execute("GET " + path, get);
+
+			if (statusCode == Status.NOT_MODIFIED.getStatusCode() && stored != null)
+			{
+				logger.fine(">>>>restfullyScanListing not modified " + path);
+				topologyCache.notModified();
+				return (T) stored.getValue();
+			}
+			processResponseCode(statusCode);
+
+			Header etag = get.getResponseHeader("ETag");
+			Header lastModified = get.getResponseHeader("Last-Modified");
+			InputStream responseStream = get.getResponseBodyAsStream();
+			if (etag != null || lastModified != null)
+			{
+				T result = scanner.scan(responseStream, new MmcJsonScanner.Page());
+				topologyCache.storeListing(listing, new StoredListing(etag != null ? etag.getValue() : null, lastModified != null ? lastModified
+				        .getValue() : null, null, result));
+				return result;
+			}
+
+			// no validators: digest the body while scanning it, whatever its size
+			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+			InputStream digestStream = new DigestInputStream(responseStream, sha256);
+			T result = scanner.scan(digestStream, new MmcJsonScanner.Page());
+			byte[] chunk = new byte[8192];
+			while (digestStream.read(chunk) != -1)
+			{
+				// the digest covers what the scanner left, trailing whitespace at most
+			}
+
+			byte[] digest = sha256.digest();
+			if (stored != null && stored.getDigest() != null && MessageDigest.isEqual(digest, stored.getDigest()))
+			{
+				logger.fine(">>>>restfullyScanListing unchanged body " + path);
+				topologyCache.notModified();
+				return (T) stored.getValue();
+			}
+			topologyCache.storeListing(listing, new StoredListing(null, null, digest, result));
+			return result;
+		} finally
+		{
+			release(get);
+		}
+	}
+
+	/**
+	 * Reads what a scanner left of a response, which after a complete JSON document is whitespace at most.
+	 * 
+	 * @return true if the response ended within {@link #TRAILING_LIMIT} bytes
+	 */
+	static boolean isFullyRead(InputStream responseStream) throws IOException
+	{
+		byte[] rest = new byte[TRAILING_LIMIT + 1];
+		int total = 0;
+		int read;
+		while (total < rest.length && (read = responseStream.read(rest, total, rest.length - total)) != -1)
+		{
+			total += read;
+		}
+		return total <= TRAILING_LIMIT;
+	}
+
+	/**
+	 * Closes the connection of a response that was abandoned early instead of letting
+	 * {@code releaseConnection} download the remainder, unless the whole body is small.
+	 */
+	private static void abortLargeResponse(HttpMethod method)
+	{
+		Header contentLength = method.getResponseHeader("Content-Length");
+		try
+		{
+			if (contentLength != null && Long.parseLong(contentLength.getValue()) <= DRAIN_LIMIT) { return; }
+		} catch (NumberFormatException e)
+		{
+			// unknown length, abort
+		}
+		logger.fine(">>>>abortLargeResponse " + method.getPath());
+		method.abort();
+	}
+
+	public String restfullyUploadRepository(String name, String version, File packageFile) throws Exception
+	{
+		return restfullyUploadRepository(name, version, packageFile, null);
+	}
+
+	/**
+	 * @param progress receives the upload progress, may be null
+	 */
+	public String restfullyUploadRepository(String name, String version, File packageFile, UploadProgressListener progress) throws Exception
+	{
+		logger.fine(">>>>restfullyUploadRepository " + name + " " + version + " " + packageFile);
+
+		String digest = uploadLedger != null ? UploadLedger.sha256(packageFile) : null;
+
+		String versionId = prepareUpload(name, version, digest);
+		if (versionId != null) { return versionId; }
+
+		return completeUpload(name, version, digest, restfullyPostRepository(name, version, packageFile, progress));
+	}
+
+	/**
+	 * First phase of an upload, run where the MMC caches and the upload ledger live: reuses an
+	 * unchanged version, or deletes the SNAPSHOT version about to be replaced.
+	 * 
+	 * @param digest SHA-256 of the archive, null to upload unconditionally
+	 * @return the id of the version to reuse, or null if the archive has to be uploaded
+	 */
+	public String prepareUpload(String name, String version, String digest) throws Exception
+	{
+		if (uploadLedger != null && digest != null)
+		{
+			String existingVersionId = restfullyGetApplicationId(name, version);
+			if (uploadLedger.isUnchanged(mmcUrl, name, version, digest, existingVersionId))
+			{
+				// the cached index may be a time-to-live old, make sure the version was not deleted since
+				invalidateRepositoryIndex();
+				existingVersionId = restfullyGetApplicationId(name, version);
+			}
+			if (uploadLedger.isUnchanged(mmcUrl, name, version, digest, existingVersionId))
+			{
+				logger.info("ARTIFACT UNCHANGED since last upload to MMC. Reusing version " + existingVersionId + " of " + name + " " + version);
+				return existingVersionId;
+			}
+		}
+
+		// delete application first
+		if (isSnapshotVersion(version))
+		{
+			logger.fine("delete " + name + " " + version);
+			restfullyDeleteApplication(name, version);
+		}
+		return null;
+	}
+
+	/**
+	 * Posts the archive to {@code /repository}. This only needs the MMC credentials, so it can run
+	 * on the build agent that holds the archive.
+	 * 
+	 * @param progress receives the upload progress, may be null
+	 * @return the id of the new version, or null if MMC already has this version
+	 */
+	public String restfullyPostRepository(String name, String version, File packageFile, UploadProgressListener progress) throws Exception
+	{
+		logger.fine(">>>>restfullyPostRepository " + name + " " + version + " " + packageFile);
+
+		PostMethod post = newRepositoryPost(mmcUrl, name, version, packageFile, chunkedUpload, progress);
+		try
+		{
+			return readPostedVersionId(execute("POST /repository", post, true), post);
+		} finally
+		{
+			release(post);
+		}
+	}
+
+	/**
+	 * Posts the archive to {@code /repository} with the given client only, without the circuit breaker,
+	 * admission, retries and metrics of this JVM. Used on build agents, whose upload was admitted and is
+	 * recorded by the master.
+	 * 
+	 * @return the id of the new version, or null if MMC already has this version
+	 */
+	static String postRepository(HttpClient httpClient, URL mmcUrl, String name, String version, File packageFile, boolean chunked,
+	        UploadProgressListener progress) throws Exception
+	{
+		logger.fine(">>>>postRepository " + name + " " + version + " " + packageFile);
+
+		PostMethod post = newRepositoryPost(mmcUrl, name, version, packageFile, chunked, progress);
+		try
+		{
+			return readPostedVersionId(httpClient.executeMethod(post), post);
+		} finally
+		{
+			post.releaseConnection();
+		}
+	}
+
+	private static PostMethod newRepositoryPost(URL mmcUrl, String name, String version, File packageFile, boolean chunked,
+	        UploadProgressListener progress) throws Exception
+	{
+		PostMethod post = new PostMethod(mmcUrl + "/repository");
+		post.setDoAuthentication(true);
+
+		Part[] parts = { new FilePart("file", packageFile), new StringPart("name", name),
+		        new StringPart("version", version) };
+
+		MultipartRequestEntity multipartEntity = new StreamingMultipartRequestEntity(parts, post.getParams(), chunked, progress);
+		post.setRequestEntity(multipartEntity);
+		return post;
+	}
+
+	private static String readPostedVersionId(int statusCode, PostMethod post) throws Exception
+	{
+		//in the case of a conflict status code, use the pre-existing application
+		if (statusCode != Status.CONFLICT.getStatusCode()) {
+			processResponseCode(statusCode);
+
+		} else{
+			logger.info("ARTIFACT ALREADY EXISTS in MMC. Creating Deployment using Pre-Existing Artifact (Not-Overwriting)");
+			return null;
+		}
+
+		JsonNode result = OBJECT_MAPPER.readTree(post.getResponseBodyAsString());
+		return result.path("versionId").asText();
+	}
+
+	/**
+	 * Last phase of an upload: records the new version, or resolves the pre-existing one after a conflict.
+	 * 
+	 * @param postedVersionId result of {@link #restfullyPostRepository(String, String, File, UploadProgressListener)}
+	 * @return the id of the version to deploy
+	 */
+	public String completeUpload(String name, String version, String digest, String postedVersionId) throws Exception
+	{
+		if (postedVersionId == null)
+		{
+			String existingVersionId = restfullyGetApplicationId(name, version);
+			if (existingVersionId == null)
+			{
+				// uploaded by someone else since the index was loaded
+				invalidateRepositoryIndex();
+				existingVersionId = restfullyGetApplicationId(name, version);
+			}
+			return existingVersionId;
+		}
+
+		MmcRepositoryIndex repositoryIndex = peekRepositoryIndex();
+		if (repositoryIndex != null)
+		{
+			repositoryIndex.put(name, version, postedVersionId);
+		}
+		if (uploadLedger != null && digest != null)
+		{
+			uploadLedger.record(mmcUrl, name, version, digest, postedVersionId);
+		}
+		return postedVersionId;
+	}
+
+	public void restfullyDeleteApplicationById(String applicationVersionId) throws Exception
+	{
+		logger.fine(">>>>restfullyDeleteApplicationById " + applicationVersionId);
+
+		DeleteMethod delete = new DeleteMethod(mmcUrl + "/repository/" + applicationVersionId);
+
+		try
+		{
+			int statusCode = execute("DELETE /repository/{id}", delete);
+
+			// a version already removed from MMC only has to leave the index
+			if (statusCode != Status.NOT_FOUND.getStatusCode())
+			{
+				processResponseCode(statusCode);
+			}
+			MmcRepositoryIndex repositoryIndex = peekRepositoryIndex();
+			if (repositoryIndex != null)
+			{
+				repositoryIndex.remove(applicationVersionId);
+			}
+		} finally
+		{
+			release(delete);
+		}
+
+	}
+
+	/**
+	 * Downloads {@code /repository} again, bypassing the cached index.
+	 * 
+	 * @return application name to version name to version id of every version in the repository
+	 */
+	public Map<String, Map<String, String>> restfullyGetRepositoryVersions() throws Exception
+	{
+		logger.fine(">>>>restfullyGetRepositoryVersions");
+
+		invalidateRepositoryIndex();
+		MmcRepositoryIndex repositoryIndex = getRepositoryIndex();
+		Map<String, Map<String, String>> applications = new TreeMap<String, Map<String, String>>();
+		for (String application : repositoryIndex.getApplications())
+		{
+			applications.put(application, new HashMap<String, String>(repositoryIndex.getVersions(application)));
+		}
+		return applications;
+	}
+
+	/**
+	 * @return the ids of the application versions contained in any deployment, read from a fresh {@code /deployments}
+	 *         listing
+	 */
+	public Set<String> restfullyGetDeployedVersionIds() throws Exception
+	{
+		logger.fine(">>>>restfullyGetDeployedVersionIds");
+
+		final Set<String> withoutApplications = new TreeSet<String>();
+		Set<String> applicationIds = restfullyScan("/deployments", new ResponseScanner<Set<String>>()
+		{
+			private final Set<String> applicationIds = new TreeSet<String>();
+
+			public Set<String> scan(InputStream responseStream, MmcJsonScanner.Page page) throws IOException
+			{
+				return MmcJsonScanner.readDeployedApplicationIds(responseStream, applicationIds, withoutApplications, page);
+			}
+		}, false);
+
+		// the listing may only summarize deployments, a version counts as unused only once its deployment was read
+		for (String deploymentId : withoutApplications)
+		{
+			applicationIds.addAll(restfullyGetDeployment(deploymentId).getApplications());
+		}
+		return applicationIds;
+	}
+
+	public void restfullyDeleteApplication(String applicationName, String version) throws Exception
+	{
+		logger.fine(">>>>restfullyDeleteApplication " + applicationName + "" + version);
+
+		String applicationVersionId = restfullyGetApplicationId(applicationName, version);
+		if (applicationVersionId != null)
+		{
+			restfullyDeleteApplicationById(applicationVersionId);
+		}
+	}
+
+	protected boolean isSnapshotVersion(String version)
+	{
+		return version.contains(SNAPSHOT);
+	}
+
+	/**
+	 * @param clusterId
+	 * @param theName
+	 * @param versionId
+	 * @return
+	 * @throws Exception
+	 */
+	public String restfullyCreateClusterDeployment(String clusterName, String name, String versionId) throws Exception
+	{
+		return restfullyCreateClusterDeployment(clusterName, name, Collections.singletonList(versionId));
+	}
+
+	/**
+	 * Creates one deployment of several application versions on the cluster.
+	 */
+	public String restfullyCreateClusterDeployment(String clusterName, String name, Collection<String> versionIds) throws Exception
+	{
+		 logger.fine(">>>>restfullyCreateClusterDeployment  "+clusterName +" "+ name + " " + versionIds);
+
 			
 		String clusterId = restfullyGetClusterId(clusterName);
-		if (clusterId.isEmpty()) { 
+		if (clusterId == null || clusterId.isEmpty()) { 
 			throw new IllegalArgumentException("Cluster not found : " + clusterName); 
 		}
 
+		String unchangedId = findUnchangedDeployment(name, "clusters", Collections.singletonList(clusterId), versionIds);
+		if (unchangedId != null) { return unchangedId; }
+
 		restfullyDeleteDeployment(name);
 		
-		return restfullyCreateClusterDeploymentById(name, versionId, clusterId);
+		return restfullyCreateClusterDeploymentById(name, versionIds, clusterId);
 
 	}
 
-	private String restfullyCreateClusterDeploymentById(String name, String versionId, String clusterId) throws Exception, IOException,
-            JsonGenerationException, UnsupportedEncodingException, HttpException, JsonProcessingException
+	private String restfullyCreateClusterDeploymentById(String name, Collection<String> versionIds, String clusterId) throws Exception
     {
-	    logger.fine(">>>>restfullyCreateClusterDeploymentById  " + name + " " + versionId);
+	    logger.fine(">>>>restfullyCreateClusterDeploymentById  " + name + " " + versionIds);
 
-		HttpClient httpClient = configureHttpClient();
+		String request = deploymentRequest(name, "clusters", Collections.singletonList(clusterId), versionIds);
 
-		StringWriter stringWriter = new StringWriter();
-		JsonFactory jfactory = new JsonFactory();
-		JsonGenerator jGenerator = jfactory.createJsonGenerator(stringWriter);
-		jGenerator.writeStartObject(); // {
-		jGenerator.writeStringField("name", name); // "name" : name
-		jGenerator.writeFieldName("clusters"); // "clusters" :
-		jGenerator.writeStartArray(); // [
-		jGenerator.writeString(clusterId); // "clusterId"
-		jGenerator.writeEndArray(); // ]
-		jGenerator.writeFieldName("applications"); // "applications" :
-		jGenerator.writeStartArray(); // [
-		jGenerator.writeString(versionId); // "applicationId"
-		jGenerator.writeEndArray(); // ]
-		jGenerator.writeEndObject(); // }
-		jGenerator.close();
+		logger.fine(">>>>restfullyCreateClusterDeploymentById request " + request);
 
-		PostMethod post = new PostMethod(mmcUrl + "/deployments");
-		post.setDoAuthentication(true);
-		post.setRequestEntity(new StringRequestEntity(stringWriter.toString(), "application/json", null));
+		return restfullyPostDeployment(request);
+    }
 
-		logger.fine(">>>>restfullyCreateClusterDeploymentById request " + stringWriter.toString());
+	public String restfullyGetClusterId(String clusterName) throws Exception
+	{
 
-		int statusCode = httpClient.executeMethod(post);
+		logger.fine(">>>>restfullyGetClusterId " + clusterName);
 
-		processResponseCode(statusCode);
+		String clusterId;
+		if (MmcTopologyCache.isEnabled())
+		{
+			Map<String, String> clusterIds = topologyCache.get(Listing.CLUSTERS, new MmcTopologyCache.Loader<Map<String, String>>()
+			{
+				public Map<String, String> load() throws Exception
+				{
+					return restfullyGetNameIndex(Listing.CLUSTERS, "/clusters");
+				}
+			});
+			clusterId = clusterIds.get(clusterName);
+		} else
+		{
+			clusterId = restfullyFindIdByName("/clusters", clusterName);
+		}
+		if (clusterId != null)
+			return clusterId;
+		
+		logger.fine(">>>>restfullyGetClusterId - no matching cluster retreived from MMC");
+		
+		return null;
 
-		InputStream responseStream = post.getResponseBodyAsStream();
+	}
 
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(responseStream);
-		return jsonNode.path("id").asText();
-    }
+	/**
+	 * Drops the cached topology of this MMC so the next lookups download fresh listings.
+	 */
+	public void refreshTopology()
+	{
+		logger.fine(">>>>refreshTopology " + mmcUrl);
+		topologyCache.invalidateAll();
+	}
 
-	public String restfullyGetClusterId(String clusterName) throws Exception
+	private final MmcTopologyCache topologyCache;
+
+	private volatile MmcRepositoryIndex localRepositoryIndex;
+
+	private final ConcurrentMap<String, MmcDeployment> unchangedDeployments = new ConcurrentHashMap<String, MmcDeployment>();
+
+	private UploadLedger uploadLedger;
+
+	private boolean chunkedUpload;
+
+	/**
+	 * Sends archives with chunked transfer encoding instead of announcing their length upfront.
+	 */
+	public void setChunkedUpload(boolean chunkedUpload)
 	{
+		this.chunkedUpload = chunkedUpload;
+	}
 
-		logger.fine(">>>>restfullyGetClusterId " + clusterName);
+	public boolean isChunkedUpload()
+	{
+		return chunkedUpload;
+	}
 
-		HttpClient httpClient = configureHttpClient();
+	/**
+	 * Enables skipping uploads of archives whose content did not change since they were last uploaded.
+	 */
+	public void setUploadLedger(UploadLedger uploadLedger)
+	{
+		this.uploadLedger = uploadLedger;
+	}
+
+	public UploadLedger getUploadLedger()
+	{
+		return uploadLedger;
+	}
+
+	public URL getMmcUrl()
+	{
+		return mmcUrl;
+	}
+
+	public String getUsername()
+	{
+		return username;
+	}
+
+	String getPassword()
+	{
+		return password;
+	}
+
+	private final HttpClient mmcHttpClient;
+
+	private final MmcCircuitBreaker circuitBreaker;
+
+	private final MmcAdmission admission;
 
-		GetMethod get = new GetMethod(mmcUrl + "/clusters");
+	private final QueueWait apiCallWait = new QueueWait();
 
-		int statusCode = httpClient.executeMethod(get);
+	private final QueueWait uploadWait = new QueueWait();
 
-		processResponseCode(statusCode);
+	/**
+	 * Time the requests of this instance spent waiting for admission, see {@link MmcAdmission}.
+	 */
+	public static final class QueueWait
+	{
+		private final AtomicInteger requests = new AtomicInteger();
+		private final AtomicInteger queued = new AtomicInteger();
+		private final AtomicLong waitMillis = new AtomicLong();
 
-		String string= get.getResponseBodyAsString();
-		logger.fine(">>>>restfullyGetClusterId response " + string);
-		JsonNode jsonNode = OBJECT_MAPPER.readTree(string);
-				
-		Iterator<JsonNode> nodeIt = jsonNode.path("data").getElements();
-		while (nodeIt.hasNext()){
-			JsonNode node = nodeIt.next();
-			if (node.path("name").asText().equals(clusterName))
-				return node.path("id").asText();
+		void record(long millis)
+		{
+			requests.incrementAndGet();
+			if (millis > 0)
+			{
+				queued.incrementAndGet();
+				waitMillis.addAndGet(millis);
+			}
 		}
-		
-		logger.fine(">>>>restfullyGetClusterId - no matching cluster retreived from MMC");
-		
-		return null;
 
+		public int getRequests()
+		{
+			return requests.get();
+		}
+
+		/**
+		 * @return requests that had to wait
+		 */
+		public int getQueued()
+		{
+			return queued.get();
+		}
+
+		public long getWaitMillis()
+		{
+			return waitMillis.get();
+		}
+	}
+
+	public MmcAdmission getAdmission()
+	{
+		return admission;
+	}
+
+	/**
+	 * @param upload true for uploads, false for API calls
+	 * @return how long the requests of this instance were queued by the {@link MmcAdmission} of the MMC
+	 */
+	public QueueWait getQueueWait(boolean upload)
+	{
+		return upload ? uploadWait : apiCallWait;
+	}
+
+	/**
+	 * Waits until the {@link MmcAdmission} of the MMC lets a request of this instance start, also for requests
+	 * made by another client such as an upload from a build agent.
+	 */
+	MmcAdmission.Permit admit(boolean upload) throws InterruptedException
+	{
+		MmcAdmission.Permit permit = admission.acquire(upload);
+		getQueueWait(upload).record(permit.getWaitMillis());
+		return permit;
+	}
+
+	private final MmcMetrics metrics;
+
+	private volatile MmcMetrics buildMetrics;
+
+	/**
+	 * Additionally records the calls of this instance, e.g. in the {@link MmcMetricsAction} of a build.
+	 */
+	public void setBuildMetrics(MmcMetrics buildMetrics)
+	{
+		this.buildMetrics = buildMetrics;
+	}
+
+	/**
+	 * Records a call made on behalf of this instance by another client, e.g. an upload from a build agent.
+	 */
+	void recordCall(String operation, long millis, boolean failed, long bytes)
+	{
+		metrics.record(operation, millis, failed, bytes);
+		MmcMetrics perBuild = buildMetrics;
+		if (perBuild != null)
+		{
+			perBuild.record(operation, millis, failed, bytes);
+		}
 	}
 
-	private HttpClient mmcHttpClient = null;
+	/**
+	 * @param targetPath {@code /servers/{id}} or {@code /clusters/{id}}
+	 * @return the operation name of the path with the id left out
+	 */
+	private static String operationOf(String targetPath)
+	{
+		int idStart = targetPath.indexOf('/', 1);
+		return "GET " + (idStart > 0 ? targetPath.substring(0, idStart) : targetPath) + "/{id}";
+	}
 
+	/**
+	 * @return the client bound to the shared connection pool of this MMC, see {@link MmcConnectionRegistry}
+	 */
 	private HttpClient configureHttpClient() throws Exception
 	{
-		if (mmcHttpClient == null)
+		return mmcHttpClient;
+	}
+
+	/**
+	 * Executes a request through the circuit breaker of this MMC. Idempotent GET and DELETE requests
+	 * failing with a transport error or a 5xx response are retried with jittered exponential backoff.
+	 * 
+	 * The call is timed until the request is released with {@link #release(HttpMethod)}, so reading the
+	 * response body counts towards its latency.
+	 * 
+	 * @param operation method and path template of the call recorded in the {@link MmcMetrics}
+	 * @return the status code of the last attempt
+	 */
+	private int execute(String operation, HttpMethod method) throws Exception
+	{
+		return execute(operation, method, false);
+	}
+
+	/**
+	 * @param upload whether the request takes an upload slot instead of an API call slot of the {@link MmcAdmission}
+	 */
+	private int execute(String operation, HttpMethod method, boolean upload) throws Exception
+	{
+		// released with the connection, the latency only counts from the admission on
+		method.getParams().setParameter(ADMISSION_PARAM, admit(upload));
+		method.getParams().setParameter(OPERATION_PARAM, operation);
+		method.getParams().setLongParameter(STARTED_PARAM, System.currentTimeMillis());
+
+		HttpClient httpClient = configureHttpClient();
+		boolean idempotent = method instanceof GetMethod || method instanceof DeleteMethod;
+
+		int retry = 0;
+		while (true)
 		{
+			boolean probe = circuitBreaker.acquire();
+
+			int statusCode;
+			boolean settled = false;
+			try
+			{
+				statusCode = httpClient.executeMethod(method);
+				if (statusCode < Status.INTERNAL_SERVER_ERROR.getStatusCode())
+				{
+					circuitBreaker.recordSuccess();
+				} else
+				{
+					circuitBreaker.recordFailure();
+				}
+				settled = true;
+			} catch (IOException e)
+			{
+				circuitBreaker.recordFailure();
+				settled = true;
+				if (!idempotent || retry >= MmcRetryPolicy.getMaxRetries()) { throw e; }
+				backoff(method, ++retry, e.toString());
+				continue;
+			} finally
+			{
+				// a runtime exception must not leave the breaker waiting for this probe forever
+				if (probe && !settled)
+				{
+					circuitBreaker.releaseProbe();
+				}
+			}
+
+			if (statusCode < Status.INTERNAL_SERVER_ERROR.getStatusCode()) { return statusCode; }
+			if (!idempotent || retry >= MmcRetryPolicy.getMaxRetries()) { return statusCode; }
+			backoff(method, ++retry, "status " + statusCode);
+		}
+	}
 
-			mmcHttpClient = new HttpClient();
+	/**
+	 * Releases the connection of a request and records its latency, outcome and transferred bytes.
+	 */
+	private void release(HttpMethod method)
+	{
+		method.releaseConnection();
+		MmcAdmission.Permit permit = (MmcAdmission.Permit) method.getParams().getParameter(ADMISSION_PARAM);
+		if (permit != null)
+		{
+			permit.release();
+		}
 
-			mmcHttpClient.getState().setCredentials(new AuthScope(mmcUrl.getHost(), mmcUrl.getPort()),
-			        new UsernamePasswordCredentials(username, password));
+		String operation = (String) method.getParams().getParameter(OPERATION_PARAM);
+		if (operation == null) { return; }
+		long millis = System.currentTimeMillis() - method.getParams().getLongParameter(STARTED_PARAM, 0);
+		boolean failed = method.getStatusLine() == null || method.getStatusCode() >= Status.BAD_REQUEST.getStatusCode();
 
-			List<String> authPrefs = new ArrayList<String>(3);
-			authPrefs.add(AuthPolicy.BASIC);
-			mmcHttpClient.getParams().setParameter(AuthPolicy.AUTH_SCHEME_PRIORITY, authPrefs);
-			mmcHttpClient.getParams().setAuthenticationPreemptive(true);
+		long bytes = 0;
+		if (method instanceof EntityEnclosingMethod && ((EntityEnclosingMethod) method).getRequestEntity() != null)
+		{
+			RequestEntity entity = ((EntityEnclosingMethod) method).getRequestEntity();
+			bytes += entity instanceof StreamingMultipartRequestEntity ? ((StreamingMultipartRequestEntity) entity).getBytesSent() : Math.max(0,
+			        entity.getContentLength());
 		}
+		Header contentLength = method.getResponseHeader("Content-Length");
+		if (contentLength != null)
+		{
+			try
+			{
+				bytes += Long.parseLong(contentLength.getValue());
+			} catch (NumberFormatException e)
+			{
+				// not counted
+			}
+		}
+		recordCall(operation, millis, failed, bytes);
+	}
 
-		return mmcHttpClient;
+	private void backoff(HttpMethod method, int retry, String cause) throws InterruptedException
+	{
+		method.releaseConnection();
+		long delay = MmcRetryPolicy.delayMillis(retry);
+		logger.info("MMC call " + method.getName() + " " + method.getPath() + " failed with " + cause + ", retry " + retry + " in " + delay + "ms");
+		Thread.sleep(delay);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,32 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.PrintStream;
+
+/**
+ * Build log stream that prefixes every line, so the output of artifacts deployed
+ * concurrently stays readable when interleaved in the same build log.
+ */
+final class PrefixedPrintStream extends PrintStream
+{
+	private final PrintStream delegate;
+	private final String prefix;
+
+	PrefixedPrintStream(PrintStream delegate, String prefix) {
+		super(delegate, true);
+		this.delegate = delegate;
+		this.prefix = prefix;
+	}
+
+	@Override
+	public void println(String x)
+	{
+		// a single println on the underlying stream keeps concurrent lines whole
+		delegate.println(prefix + x);
+	}
+
+	@Override
+	public void println(Object x)
+	{
+		println(String.valueOf(x));
+	}
+}
@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.httpclient.methods.multipart.MultipartRequestEntity;
+import org.apache.commons.httpclient.methods.multipart.Part;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+
+/**
+ * Multipart upload body written through a fixed-size buffer that reports its progress.
+ * <p>
+ * When chunked, the content length is not announced so HttpClient sends the body with chunked
+ * transfer encoding, one chunk per buffer.
+ */
+final class StreamingMultipartRequestEntity extends MultipartRequestEntity
+{
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private final boolean chunked;
+	private final UploadProgressListener listener;
+	private volatile long bytesSent;
+
+	StreamingMultipartRequestEntity(Part[] parts, HttpMethodParams params, boolean chunked, UploadProgressListener listener) {
+		super(parts, params);
+		this.chunked = chunked;
+		this.listener = listener;
+	}
+
+	@Override
+	public long getContentLength()
+	{
+		return chunked ? -1 : super.getContentLength();
+	}
+
+	/**
+	 * @return the bytes of the body written by the last attempt to send it
+	 */
+	long getBytesSent()
+	{
+		return bytesSent;
+	}
+
+	@Override
+	public void writeRequest(OutputStream out) throws IOException
+	{
+		ProgressOutputStream progress = new ProgressOutputStream(out, super.getContentLength());
+		OutputStream buffered = new BufferedOutputStream(progress, BUFFER_SIZE);
+		super.writeRequest(buffered);
+		buffered.flush();
+		if (listener != null)
+		{
+			listener.finished(progress.bytesSent, System.currentTimeMillis() - progress.startedAt);
+		}
+	}
+
+	private final class ProgressOutputStream extends FilterOutputStream
+	{
+		private final long totalBytes;
+		private final long startedAt = System.currentTimeMillis();
+		private long bytesSent;
+
+		ProgressOutputStream(OutputStream out, long totalBytes) {
+			super(out);
+			this.totalBytes = totalBytes;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			out.write(b);
+			sent(1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			out.write(b, off, len);
+			sent(len);
+		}
+
+		private void sent(int len)
+		{
+			bytesSent += len;
+			StreamingMultipartRequestEntity.this.bytesSent = bytesSent;
+			if (listener != null)
+			{
+				listener.progress(bytesSent, totalBytes, System.currentTimeMillis() - startedAt);
+			}
+		}
+	}
+}
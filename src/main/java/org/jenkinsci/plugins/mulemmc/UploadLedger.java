@@ -0,0 +1,174 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.util.AtomicFileWriter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent record of the artifacts uploaded to MMC repositories: for every (MMC, name, version)
+ * the SHA-256 digest of the uploaded archive and the version id MMC assigned to it.
+ * <p>
+ * {@link MuleRest} uses it to skip re-uploading an archive whose bytes did not change. The ledger keeps the
+ * most recently recorded uploads only and is replaced atomically on every write, so a crash never leaves it
+ * truncated.
+ */
+public final class UploadLedger
+{
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private static final Logger logger = Logger.getLogger(UploadLedger.class.getName());
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final int maxEntries;
+	private final Properties entries = new Properties();
+	private long lastRecorded;
+
+	public UploadLedger(File file) {
+		this(file, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * @param maxEntries uploads kept, the ones recorded longest ago are dropped first
+	 */
+	UploadLedger(File file, int maxEntries) {
+		this.file = file;
+		this.maxEntries = maxEntries;
+		if (file.exists())
+		{
+			try
+			{
+				Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+				try
+				{
+					entries.load(in);
+				} finally
+				{
+					in.close();
+				}
+			} catch (IOException e)
+			{
+				logger.log(Level.WARNING, "could not read upload ledger " + file, e);
+			}
+		}
+	}
+
+	/**
+	 * @return true if the archive with this digest was the last one uploaded as this version and MMC
+	 *         still knows the version under the id it got then
+	 */
+	public synchronized boolean isUnchanged(URL mmcUrl, String name, String version, String digest, String versionId)
+	{
+		String entry = entries.getProperty(key(mmcUrl, name, version));
+		if (entry == null || versionId == null) { return false; }
+		String[] fields = entry.split(" ");
+		return fields.length >= 2 && fields[0].equals(digest) && fields[1].equals(versionId);
+	}
+
+	public synchronized void record(URL mmcUrl, String name, String version, String digest, String versionId)
+	{
+		// distinct times keep the order of uploads recorded within the same millisecond
+		lastRecorded = Math.max(System.currentTimeMillis(), lastRecorded + 1);
+		entries.setProperty(key(mmcUrl, name, version), digest + " " + versionId + " " + lastRecorded);
+		while (entries.size() > maxEntries)
+		{
+			entries.remove(oldestKey());
+		}
+		try
+		{
+			AtomicFileWriter out = new AtomicFileWriter(file, "UTF-8");
+			try
+			{
+				entries.store(out, "Mule MMC uploads: digest, version id and time recorded per MMC, name and version");
+				out.commit();
+			} finally
+			{
+				out.abort();
+			}
+		} catch (IOException e)
+		{
+			logger.log(Level.WARNING, "could not write upload ledger " + file, e);
+		}
+	}
+
+	/**
+	 * @return the key of the entry recorded longest ago, entries of older ledgers without a time first
+	 */
+	private Object oldestKey()
+	{
+		Object oldestKey = null;
+		long oldest = Long.MAX_VALUE;
+		for (String key : entries.stringPropertyNames())
+		{
+			String[] fields = entries.getProperty(key).split(" ");
+			long recorded;
+			try
+			{
+				recorded = fields.length >= 3 ? Long.parseLong(fields[2]) : 0;
+			} catch (NumberFormatException e)
+			{
+				recorded = 0;
+			}
+			if (oldestKey == null || recorded < oldest)
+			{
+				oldestKey = key;
+				oldest = recorded;
+			}
+		}
+		return oldestKey;
+	}
+
+	/**
+	 * Computes the SHA-256 digest of a file with a fixed-size buffer, whatever its size.
+	 *
+	 * @return the digest as lower case hex
+	 */
+	public static String sha256(File packageFile) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+
+		InputStream in = new FileInputStream(packageFile);
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+			{
+				digest.update(buffer, 0, read);
+			}
+		} finally
+		{
+			in.close();
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private static String key(URL mmcUrl, String name, String version)
+	{
+		return mmcUrl.toExternalForm() + "|" + name + "|" + version;
+	}
+}
@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.PrintStream;
+
+/**
+ * Writes upload progress lines (bytes sent, MB/s, ETA) to the build log at a fixed interval
+ * and keeps the final throughput.
+ */
+final class UploadProgress implements UploadProgressListener
+{
+	private static final long REPORT_INTERVAL_MILLIS = 5000;
+	private static final double MB = 1024 * 1024;
+
+	private final PrintStream logger;
+	private long lastReportMillis;
+	private volatile long bytesSent;
+	private volatile long elapsedMillis;
+
+	UploadProgress(PrintStream logger) {
+		this.logger = logger;
+	}
+
+	public void progress(long sent, long totalBytes, long elapsed)
+	{
+		if (elapsed - lastReportMillis < REPORT_INTERVAL_MILLIS) { return; }
+		lastReportMillis = elapsed;
+
+		double rate = megabytesPerSecond(sent, elapsed);
+		StringBuilder line = new StringBuilder("....uploaded ").append(String.format("%.1f", sent / MB)).append(" MB");
+		if (totalBytes > 0)
+		{
+			line.append(" of ").append(String.format("%.1f", totalBytes / MB)).append(" MB (").append(sent * 100 / totalBytes).append("%)");
+		}
+		line.append(", ").append(String.format("%.2f", rate)).append(" MB/s");
+		if (totalBytes > 0 && rate > 0)
+		{
+			line.append(", ETA ").append(Math.round((totalBytes - sent) / MB / rate)).append("s");
+		}
+		logger.println(line.toString());
+	}
+
+	public void finished(long sent, long elapsed)
+	{
+		setResult(sent, elapsed);
+		logger.println("....upload finished: " + String.format("%.1f", sent / MB) + " MB in " + String.format("%.1f", elapsed / 1000.0) + "s, "
+		        + String.format("%.2f", getMegabytesPerSecond()) + " MB/s");
+	}
+
+	/**
+	 * Keeps the outcome of an upload that was reported elsewhere, e.g. on a build agent.
+	 */
+	void setResult(long sent, long elapsed)
+	{
+		this.bytesSent = sent;
+		this.elapsedMillis = elapsed;
+	}
+
+	long getBytesSent()
+	{
+		return bytesSent;
+	}
+
+	long getElapsedMillis()
+	{
+		return elapsedMillis;
+	}
+
+	double getMegabytesPerSecond()
+	{
+		return megabytesPerSecond(bytesSent, elapsedMillis);
+	}
+
+	static double megabytesPerSecond(long bytes, long millis)
+	{
+		return millis > 0 ? bytes / MB / (millis / 1000.0) : 0;
+	}
+}
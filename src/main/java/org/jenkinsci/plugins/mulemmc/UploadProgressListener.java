@@ -0,0 +1,19 @@
+package org.jenkinsci.plugins.mulemmc;
+
+/**
+ * Receives the progress of an archive upload to the MMC repository.
+ */
+public interface UploadProgressListener
+{
+	/**
+	 * Called after every block written to the connection.
+	 * 
+	 * @param totalBytes size of the whole request body
+	 */
+	void progress(long bytesSent, long totalBytes, long elapsedMillis);
+
+	/**
+	 * Called once the whole request body was written.
+	 */
+	void finished(long bytesSent, long elapsedMillis);
+}
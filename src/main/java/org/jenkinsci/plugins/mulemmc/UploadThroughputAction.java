@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Throughput of the archives a build uploaded to MMC, shown on the build page and exported
+ * through the remote API so upload speed can be tracked across builds.
+ */
+@ExportedBean
+public class UploadThroughputAction implements Action
+{
+	private final List<Upload> uploads = new ArrayList<Upload>();
+
+	/**
+	 * One archive uploaded to the MMC repository.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static final class Upload
+	{
+		private final String name;
+		private final String version;
+		private final long bytes;
+		private final long millis;
+
+		Upload(String name, String version, long bytes, long millis) {
+			this.name = name;
+			this.version = version;
+			this.bytes = bytes;
+			this.millis = millis;
+		}
+
+		@Exported
+		public String getName()
+		{
+			return name;
+		}
+
+		@Exported
+		public String getVersion()
+		{
+			return version;
+		}
+
+		@Exported
+		public long getBytes()
+		{
+			return bytes;
+		}
+
+		@Exported
+		public long getMillis()
+		{
+			return millis;
+		}
+
+		@Exported
+		public double getMegabytesPerSecond()
+		{
+			return UploadProgress.megabytesPerSecond(bytes, millis);
+		}
+
+		public String getThroughput()
+		{
+			return String.format("%.2f MB/s", getMegabytesPerSecond());
+		}
+	}
+
+	synchronized void add(String name, String version, long bytes, long millis)
+	{
+		uploads.add(new Upload(name, version, bytes, millis));
+	}
+
+	@Exported
+	public synchronized List<Upload> getUploads()
+	{
+		return new ArrayList<Upload>(uploads);
+	}
+
+	/**
+	 * @return the throughput over all uploads of the build
+	 */
+	@Exported
+	public synchronized double getMegabytesPerSecond()
+	{
+		long bytes = 0;
+		long millis = 0;
+		for (Upload upload : uploads)
+		{
+			bytes += upload.bytes;
+			millis += upload.millis;
+		}
+		return UploadProgress.megabytesPerSecond(bytes, millis);
+	}
+
+	public String getIconFileName()
+	{
+		return null;
+	}
+
+	public String getDisplayName()
+	{
+		return "MMC Upload Throughput";
+	}
+
+	public String getUrlName()
+	{
+		return "mmcUploadThroughput";
+	}
+}
@@ -0,0 +1,99 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Queue;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * Polling of {@link DeploymentWaiter} against scripted deployment and target statuses.
+ */
+public class DeploymentWaiterTest
+{
+	/**
+	 * Answers the polls from scripts, repeating the last answer once a script is used up.
+	 */
+	private static class ScriptedMuleRest extends MuleRest
+	{
+		private final Queue<String> deploymentStatuses = new LinkedList<String>();
+		private final Queue<String> targetStatuses = new LinkedList<String>();
+
+		ScriptedMuleRest() throws Exception {
+			super(new URL("http://mmc.invalid:8080/mmc/api"), "admin", "admin");
+		}
+
+		@Override
+		public MmcDeployment restfullyGetDeployment(String deploymentId) throws Exception
+		{
+			String status = deploymentStatuses.size() > 1 ? deploymentStatuses.remove() : deploymentStatuses.peek();
+			return new MmcDeployment(new ObjectMapper().readTree("{\"name\": \"app\", \"status\": \"" + status
+			        + "\", \"servers\": [\"s1\"]}"));
+		}
+
+		@Override
+		public String restfullyGetApplicationsStatus(String targetPath, Collection<String> applicationNames, Collection<String> versionIds)
+		        throws Exception
+		{
+			String status = targetStatuses.size() > 1 ? targetStatuses.remove() : targetStatuses.peek();
+			if ("ERROR".equals(status)) { throw new Exception("no status"); }
+			return status;
+		}
+	}
+
+	private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+	private boolean await(ScriptedMuleRest muleRest, long timeoutMillis) throws Exception
+	{
+		return new DeploymentWaiter(muleRest, new PrintStream(log, true, "UTF-8"), timeoutMillis).await("d1", Collections.singleton("app"));
+	}
+
+	@Test
+	public void waitsForDeploymentAndTargets() throws Exception
+	{
+		ScriptedMuleRest muleRest = new ScriptedMuleRest();
+		muleRest.deploymentStatuses.addAll(Collections.nCopies(2, "IN_PROGRESS"));
+		muleRest.deploymentStatuses.add("DEPLOYED");
+		muleRest.targetStatuses.add(null);
+		muleRest.targetStatuses.add("STARTED");
+		assertTrue(await(muleRest, 10000));
+		assertTrue(log.toString("UTF-8").contains("ready on /servers/s1"));
+	}
+
+	@Test
+	public void deployedDeploymentWaitsForTargets() throws Exception
+	{
+		ScriptedMuleRest muleRest = new ScriptedMuleRest();
+		muleRest.deploymentStatuses.add("DEPLOYED");
+		muleRest.targetStatuses.add(null);
+		assertFalse(await(muleRest, 700));
+		assertTrue(log.toString("UTF-8").contains("gave up waiting"));
+	}
+
+	@Test
+	public void failedTargetFails() throws Exception
+	{
+		ScriptedMuleRest muleRest = new ScriptedMuleRest();
+		muleRest.deploymentStatuses.add("IN_PROGRESS");
+		muleRest.targetStatuses.add("FAILED");
+		assertFalse(await(muleRest, 10000));
+	}
+
+	@Test
+	public void unavailableTargetStatusFallsBackToDeployment() throws Exception
+	{
+		ScriptedMuleRest muleRest = new ScriptedMuleRest();
+		muleRest.deploymentStatuses.add("IN_PROGRESS");
+		muleRest.deploymentStatuses.add("DEPLOYED");
+		muleRest.targetStatuses.add("ERROR");
+		assertTrue(await(muleRest, 10000));
+	}
+}
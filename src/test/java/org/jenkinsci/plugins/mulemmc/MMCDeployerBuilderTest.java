@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Defaults of the optional deployment settings of {@link MMCDeployerBuilder}.
+ */
+public class MMCDeployerBuilderTest
+{
+	private static MMCDeployerBuilder newBuilder()
+	{
+		return new MMCDeployerBuilder("http://mmc.invalid:8080/mmc/api", "admin", "admin", false, true, "group",
+		        "target/app.zip", "app", "1.0");
+	}
+
+	@Test
+	public void parallelDeploymentIsOff()
+	{
+		MMCDeployerBuilder builder = newBuilder();
+		assertFalse(builder.isParallelDeployment());
+		assertEquals(4, builder.getMaxConcurrentDeployments());
+
+		builder.setMaxConcurrentDeployments(0);
+		assertEquals("non-positive limits fall back to the default", 4, builder.getMaxConcurrentDeployments());
+		builder.setMaxConcurrentDeployments(2);
+		assertEquals(2, builder.getMaxConcurrentDeployments());
+	}
+
+	@Test
+	public void uploadFromAgentIsOff()
+	{
+		MMCDeployerBuilder builder = newBuilder();
+		assertFalse(builder.isUploadFromAgent());
+		builder.setUploadFromAgent(true);
+		assertTrue(builder.isUploadFromAgent());
+	}
+
+	@Test
+	public void skipUnchangedUploadsIsOff()
+	{
+		MMCDeployerBuilder builder = newBuilder();
+		assertFalse(builder.isSkipUnchangedUploads());
+		builder.setSkipUnchangedUploads(true);
+		assertTrue(builder.isSkipUnchangedUploads());
+	}
+
+	@Test
+	public void waitForCompletionIsOff()
+	{
+		MMCDeployerBuilder builder = newBuilder();
+		assertFalse(builder.isWaitForCompletion());
+		assertEquals(600, builder.getWaitTimeout());
+		builder.setWaitTimeout(30);
+		assertEquals(30, builder.getWaitTimeout());
+	}
+
+	@Test
+	public void batchDeploymentIsOff()
+	{
+		MMCDeployerBuilder builder = newBuilder();
+		assertFalse(builder.isBatchDeployment());
+		assertNull("named after the job", builder.getBatchDeploymentName());
+	}
+
+	@Test
+	public void targetConcurrencyDefaultsToFour()
+	{
+		MMCDeployerBuilder builder = newBuilder();
+		assertEquals(4, builder.getMaxConcurrentTargets());
+		builder.setMaxConcurrentTargets(8);
+		assertEquals(8, builder.getMaxConcurrentTargets());
+	}
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Concurrency limits and token bucket of {@link MmcAdmission}. Admissions are shared per MMC URL, so every test
+ * uses a URL of its own.
+ */
+public class MmcAdmissionTest
+{
+	private static final AtomicInteger MMCS = new AtomicInteger();
+
+	private URL mmcUrl;
+
+	@Before
+	public void createUrl() throws Exception
+	{
+		mmcUrl = new URL("http://mmc-" + MMCS.incrementAndGet() + ".invalid/mmc/api");
+	}
+
+	@After
+	public void resetConfiguration()
+	{
+		MmcAdmission.configure(MmcAdmission.DEFAULT_MAX_CONCURRENT_UPLOADS, MmcAdmission.DEFAULT_MAX_CONCURRENT_API_CALLS, 0);
+	}
+
+	@Test
+	public void noLimitByDefault() throws Exception
+	{
+		MmcAdmission admission = MmcAdmission.forMmc(mmcUrl);
+		for (int i = 0; i < 100; i++)
+		{
+			admission.acquire(true);
+			admission.acquire(false);
+		}
+		assertEquals(0, admission.getQueuedUploads());
+		assertEquals(0, admission.getQueuedApiCalls());
+	}
+
+	@Test
+	public void uploadsOverTheLimitQueue() throws Exception
+	{
+		MmcAdmission.configure(1, 0, 0);
+		MmcAdmission admission = MmcAdmission.forMmc(mmcUrl);
+		MmcAdmission.Permit permit = admission.acquire(true);
+
+		CountDownLatch started = acquireInBackground(admission, true);
+		waitForQueuedUploads(admission, 1);
+		admission.acquire(false).release();
+		assertEquals("API calls have their own limit", 1, admission.getQueuedUploads());
+
+		permit.release();
+		permit.release();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// the second release had no effect, the only permit is taken by the background upload
+		acquireInBackground(admission, true);
+		waitForQueuedUploads(admission, 1);
+	}
+
+	@Test
+	public void raisedLimitAppliesToExistingMmc() throws Exception
+	{
+		MmcAdmission.configure(1, 0, 0);
+		MmcAdmission admission = MmcAdmission.forMmc(mmcUrl);
+		admission.acquire(true);
+
+		CountDownLatch started = acquireInBackground(admission, true);
+		waitForQueuedUploads(admission, 1);
+		MmcAdmission.configure(2, 0, 0);
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void tokenBucketLimitsRate() throws Exception
+	{
+		MmcAdmission.configure(0, 0, 10);
+		MmcAdmission admission = MmcAdmission.forMmc(mmcUrl);
+
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 10; i++)
+		{
+			admission.acquire(false).release();
+		}
+		assertTrue("the bucket starts full", System.currentTimeMillis() - start < 500);
+
+		for (int i = 0; i < 10; i++)
+		{
+			admission.acquire(i % 2 == 0).release();
+		}
+		assertTrue("10 requests over the bucket take a second", System.currentTimeMillis() - start >= 900);
+	}
+
+	/**
+	 * @return counted down once the request was admitted
+	 */
+	private static CountDownLatch acquireInBackground(final MmcAdmission admission, final boolean upload)
+	{
+		final CountDownLatch started = new CountDownLatch(1);
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					admission.acquire(upload);
+					started.countDown();
+				} catch (InterruptedException e)
+				{
+					// test over
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		return started;
+	}
+
+	private static void waitForQueuedUploads(MmcAdmission admission, int queued) throws InterruptedException
+	{
+		long deadline = System.currentTimeMillis() + 5000;
+		while (admission.getQueuedUploads() != queued && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(queued, admission.getQueuedUploads());
+	}
+}
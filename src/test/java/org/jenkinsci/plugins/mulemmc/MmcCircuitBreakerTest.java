@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * State transitions of {@link MmcCircuitBreaker}, opening after 2 consecutive failures for 1 second. Breakers are
+ * shared per MMC URL, so every test uses a URL of its own.
+ */
+public class MmcCircuitBreakerTest
+{
+	private static final AtomicInteger MMCS = new AtomicInteger();
+
+	private MmcCircuitBreaker breaker;
+
+	@Before
+	public void createBreaker() throws Exception
+	{
+		MmcCircuitBreaker.configure(2, 1);
+		breaker = MmcCircuitBreaker.forMmc(new URL("http://mmc-" + MMCS.incrementAndGet() + ".invalid/mmc/api"));
+	}
+
+	@After
+	public void resetConfiguration()
+	{
+		MmcCircuitBreaker.configure(MmcCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, MmcCircuitBreaker.DEFAULT_OPEN_SECONDS);
+	}
+
+	@Test
+	public void opensAfterConsecutiveFailures() throws Exception
+	{
+		assertFalse(breaker.acquire());
+		breaker.recordFailure();
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		assertFalse("failures are counted in a row only", breaker.isOpen());
+
+		breaker.recordFailure();
+		assertTrue(breaker.isOpen());
+		assertFailsFast();
+	}
+
+	@Test
+	public void successfulProbeCloses() throws Exception
+	{
+		open();
+		Thread.sleep(1100);
+		assertTrue("first request after the open period probes", breaker.acquire());
+		assertFailsFast();
+		breaker.recordSuccess();
+		assertFalse(breaker.isOpen());
+		assertFalse(breaker.acquire());
+	}
+
+	@Test
+	public void failedProbeReopens() throws Exception
+	{
+		open();
+		Thread.sleep(1100);
+		assertTrue(breaker.acquire());
+		breaker.recordFailure();
+		assertTrue(breaker.isOpen());
+		assertFailsFast();
+	}
+
+	@Test
+	public void releasedProbeLetsNextRequestProbe() throws Exception
+	{
+		open();
+		Thread.sleep(1100);
+		assertTrue(breaker.acquire());
+		breaker.releaseProbe();
+		assertTrue(breaker.isOpen());
+		assertTrue(breaker.acquire());
+	}
+
+	@Test
+	public void zeroThresholdNeverOpens() throws Exception
+	{
+		MmcCircuitBreaker.configure(0, 1);
+		for (int i = 0; i < 10; i++)
+		{
+			breaker.recordFailure();
+		}
+		assertFalse(breaker.isOpen());
+		assertFalse(breaker.acquire());
+	}
+
+	private void open()
+	{
+		breaker.recordFailure();
+		breaker.recordFailure();
+		assertTrue(breaker.isOpen());
+	}
+
+	private void assertFailsFast()
+	{
+		try
+		{
+			breaker.acquire();
+			fail("open breaker let a request through");
+		} catch (IOException e)
+		{
+			// expected
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.SimpleHttpConnectionManager;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Sharing and configuration of the pooled connection managers of {@link MmcConnectionRegistry}.
+ */
+public class MmcConnectionRegistryTest
+{
+	@After
+	public void resetRegistry()
+	{
+		MmcConnectionRegistry.configure(0, 0, 0);
+		MmcConnectionRegistry.shutdown();
+	}
+
+	@Test
+	public void poolIsSharedPerMmcAndUser() throws Exception
+	{
+		URL mmcUrl = new URL("http://mmc.invalid:8080/mmc/api");
+		MultiThreadedHttpConnectionManager manager = MmcConnectionRegistry.getConnectionManager(mmcUrl, "admin");
+
+		assertSame(manager, MmcConnectionRegistry.getConnectionManager(new URL("http://mmc.invalid:8080/mmc/api"), "admin"));
+		assertSame(manager, MmcConnectionRegistry.createHttpClient(mmcUrl, "admin", "admin").getHttpConnectionManager());
+		assertNotSame(manager, MmcConnectionRegistry.getConnectionManager(mmcUrl, "deployer"));
+		assertNotSame(manager, MmcConnectionRegistry.getConnectionManager(new URL("http://other.invalid:8080/mmc/api"), "admin"));
+	}
+
+	@Test
+	public void limitsApplyToExistingPools() throws Exception
+	{
+		MultiThreadedHttpConnectionManager manager = MmcConnectionRegistry.getConnectionManager(new URL("http://mmc.invalid:8080/mmc/api"), "admin");
+		assertEquals(MmcConnectionRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST, manager.getParams().getDefaultMaxConnectionsPerHost());
+
+		MmcConnectionRegistry.configure(3, 7, 30);
+		assertEquals(3, manager.getParams().getDefaultMaxConnectionsPerHost());
+		assertEquals(7, manager.getParams().getMaxTotalConnections());
+		assertTrue(manager.getParams().isStaleCheckingEnabled());
+
+		MmcConnectionRegistry.configure(0, -1, 0);
+		assertEquals(MmcConnectionRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST, manager.getParams().getDefaultMaxConnectionsPerHost());
+		assertEquals(MmcConnectionRegistry.DEFAULT_MAX_TOTAL_CONNECTIONS, manager.getParams().getMaxTotalConnections());
+	}
+
+	@Test
+	public void clientAuthenticatesPreemptively() throws Exception
+	{
+		HttpClient httpClient = MmcConnectionRegistry.createHttpClient(new URL("http://mmc.invalid:8080/mmc/api"), "admin", "secret");
+
+		assertTrue(httpClient.getParams().isAuthenticationPreemptive());
+		UsernamePasswordCredentials credentials = (UsernamePasswordCredentials) httpClient.getState().getCredentials(
+		        new AuthScope("mmc.invalid", 8080));
+		assertEquals("admin", credentials.getUserName());
+		assertEquals("secret", credentials.getPassword());
+	}
+
+	@Test
+	public void clientOfItsOwnIsNotPooled() throws Exception
+	{
+		URL mmcUrl = new URL("http://mmc.invalid:8080/mmc/api");
+		SimpleHttpConnectionManager connectionManager = new SimpleHttpConnectionManager(true);
+		HttpClient httpClient = MmcConnectionRegistry.createHttpClient(mmcUrl, "admin", "secret", connectionManager);
+
+		assertSame(connectionManager, httpClient.getHttpConnectionManager());
+		assertTrue(httpClient.getParams().isAuthenticationPreemptive());
+		assertEquals("secret", ((UsernamePasswordCredentials) httpClient.getState().getCredentials(new AuthScope("mmc.invalid", 8080)))
+		        .getPassword());
+	}
+
+	@Test
+	public void shutdownClosesPools() throws Exception
+	{
+		URL mmcUrl = new URL("http://mmc.invalid:8080/mmc/api");
+		MultiThreadedHttpConnectionManager manager = MmcConnectionRegistry.getConnectionManager(mmcUrl, "admin");
+
+		MmcConnectionRegistry.shutdown();
+		assertNotSame("a pool is created again after shutdown", manager, MmcConnectionRegistry.getConnectionManager(mmcUrl, "admin"));
+	}
+}
@@ -0,0 +1,361 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.FilePath;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Future;
+
+import org.codehaus.jackson.JsonNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Deployment flows of {@link MmcDeployer} against an {@link MmcStub} with 6 servers in 2 groups, group-0
+ * holding servers 0, 2 and 4.
+ */
+public class MmcDeployerTest
+{
+	private static final Set<String> GROUP_0_SERVERS = new TreeSet<String>(Arrays.asList("local$server-0", "local$server-2", "local$server-4"));
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private MmcStub stub;
+	private MuleRest muleRest;
+	private ByteArrayOutputStream log;
+
+	@Before
+	public void startStub() throws IOException
+	{
+		stub = new MmcStub(6, 2, 1);
+		stub.start();
+		muleRest = new MuleRest(stub.getUrl(), "admin", "admin");
+		log = new ByteArrayOutputStream();
+	}
+
+	@After
+	public void stopStub()
+	{
+		stub.stop();
+	}
+
+	@Test
+	public void uploadsCreatesAndActivates() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		String versionId = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app.zip")), "app", "1.0.0");
+
+		deployer.deploy(new PrintStream(log, true), "group-0", "app", Collections.singletonList(versionId), Collections.singletonList("app"), null);
+		MmcDeployment deployment = muleRest.restfullyGetDeployment(muleRest.restfullyGetDeploymentIdByName("app"));
+		assertTrue(deployment.isDeployed());
+		assertEquals(GROUP_0_SERVERS, deployment.getServers());
+		assertEquals(Collections.singleton(versionId), deployment.getApplications());
+	}
+
+	@Test
+	public void targetResolvedDuringUploadReplacesDeployment() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		deploy(deployer, deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app.zip")), "app", "1.0.0"));
+
+		Map<String, Future<MmcDeploymentTarget>> resolved = deployer.resolveTargets("group-0", "app");
+		String version2 = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app-1.0.1.zip")), "app", "1.0.1");
+		deployer.deploy(new PrintStream(log, true), "group-0", "app", Collections.singletonList(version2), Collections.singletonList("app"), null,
+		        resolved);
+		assertTrue(log.toString(), log.toString().contains("....resolved group-0 and its deployment in "));
+		MmcDeployment deployment = muleRest.restfullyGetDeployment(muleRest.restfullyGetDeploymentIdByName("app"));
+		assertTrue(deployment.isDeployed());
+		assertEquals(GROUP_0_SERVERS, deployment.getServers());
+		assertEquals(Collections.singleton(version2), deployment.getApplications());
+	}
+
+	@Test
+	public void applicationCountsOnceTheDeployedVersionRuns() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		String version1 = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app.zip")), "app", "1.0.0");
+		deploy(deployer, version1);
+		String version2 = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app-1.0.1.zip")), "app", "1.0.1");
+
+		String serverPath = "/servers/" + GROUP_0_SERVERS.iterator().next();
+		assertEquals("STARTED", muleRest.restfullyGetApplicationsStatus(serverPath, Collections.singleton("app"), Collections.singleton(version1)));
+		assertNull("the previous version is running", muleRest.restfullyGetApplicationsStatus(serverPath, Collections.singleton("app"),
+		        Collections.singleton(version2)));
+	}
+
+	@Test
+	public void upToDateDeploymentIsKept() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		String version1 = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app.zip")), "app", "1.0.0");
+		deploy(deployer, version1);
+		String deploymentId = muleRest.restfullyGetDeploymentIdByName("app");
+
+		deploy(deployer, version1);
+		assertTrue(log.toString(), log.toString().contains("deployment app is already up to date"));
+		assertEquals(deploymentId, muleRest.restfullyGetDeploymentIdByName("app"));
+
+		String version2 = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app-1.0.1.zip")), "app", "1.0.1");
+		deploy(deployer, version2);
+		MmcDeployment deployment = muleRest.restfullyGetDeployment(muleRest.restfullyGetDeploymentIdByName("app"));
+		assertTrue(deployment.isDeployed());
+		assertEquals(Collections.singleton(version2), deployment.getApplications());
+	}
+
+	@Test
+	public void severalTargetsGetOneDeploymentEach() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		String versionId = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app.zip")), "app", "1.0.0");
+
+		deployer.deploy(new PrintStream(log, true), "group-0,\ngroup-1", "app", Collections.singletonList(versionId), Collections.singletonList("app"),
+		        null);
+		assertTrue(muleRest.restfullyGetDeployment(muleRest.restfullyGetDeploymentIdByName("app-group-0")).isDeployed());
+		assertEquals(new TreeSet<String>(Arrays.asList("local$server-1", "local$server-3", "local$server-5")),
+		        muleRest.restfullyGetDeployment(muleRest.restfullyGetDeploymentIdByName("app-group-1")).getServers());
+	}
+
+	@Test
+	public void resumedDeploymentReattaches() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		String versionId = deployer.upload(new PrintStream(log, true), new FilePath(folder.newFile("app.zip")), "app", "1.0.0");
+		String deploymentId = muleRest.restfullyCreateDeployment("group-0", "app", Collections.singletonList(versionId));
+		File progressFile = new File(folder.getRoot(), "progress.xml");
+		DeploymentProgress.load(progressFile).created("group-0", deploymentId);
+
+		DeploymentProgress progress = DeploymentProgress.load(progressFile);
+		deployer.deploy(new PrintStream(log, true), "group-0", "app", Collections.singletonList(versionId), Collections.singletonList("app"), progress);
+		assertTrue(log.toString(), log.toString().contains("re-attaching to deployment app (" + deploymentId + ")"));
+		assertTrue(muleRest.restfullyGetDeployment(deploymentId).isDeployed());
+		assertTrue(DeploymentProgress.load(progressFile).isCompleted("group-0"));
+	}
+
+	@Test
+	public void rollingDeploymentLeavesSingleDeployment() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		deployer.setRollingBatchSize("2");
+
+		String version1 = stub.addVersion("app", "1.0.0");
+		deploy(deployer, version1);
+		assertTrue(log.toString(), log.toString().contains("batch 2/2 (1 servers) completed"));
+		String deploymentId = assertSingleDeployment("app", version1);
+
+		deploy(deployer, version1);
+		assertEquals("unchanged deployment is kept", deploymentId, assertSingleDeployment("app", version1));
+
+		String version2 = stub.addVersion("app", "1.0.1");
+		deploy(deployer, version2);
+		assertSingleDeployment("app", version2);
+	}
+
+	@Test
+	public void batchSizeOf()
+	{
+		assertEquals(2, MmcDeployer.batchSizeOf("2", 6));
+		assertEquals("at most all servers", 6, MmcDeployer.batchSizeOf("20", 6));
+		assertEquals(3, MmcDeployer.batchSizeOf("50%", 6));
+		assertEquals("percentages round up", 1, MmcDeployer.batchSizeOf("10%", 6));
+		assertEquals(6, MmcDeployer.batchSizeOf(" 100 %", 6));
+		for (String invalid : Arrays.asList("0", "-1", "0%", "half", "%"))
+		{
+			try
+			{
+				MmcDeployer.batchSizeOf(invalid, 6);
+				fail("invalid batch size accepted: " + invalid);
+			} catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void targetsAreSplitTrimmedAndDistinct()
+	{
+		assertEquals(Arrays.asList("group-1"), MmcDeployer.targetsOf("group-1"));
+		assertEquals(Arrays.asList("group-1", "group-2", "cluster-1"), MmcDeployer.targetsOf(" group-1, group-2\ncluster-1,,group-1 \n"));
+		assertTrue(MmcDeployer.targetsOf(null).isEmpty());
+		assertTrue(MmcDeployer.targetsOf(" , ").isEmpty());
+	}
+
+	private void deploy(MmcDeployer deployer, String versionId) throws Exception
+	{
+		deployer.deploy(new PrintStream(log, true), "group-0", "app", Collections.singletonList(versionId), Collections.singletonList("app"), null);
+	}
+
+	@Test
+	public void swapDeploymentReplacesPreviousDeployment() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		deployer.setSwapDeployment(true);
+
+		String version1 = stub.addVersion("app", "1.0.0");
+		deploy(deployer, version1);
+		assertSingleDeployment("app", version1);
+
+		String version2 = stub.addVersion("app", "1.0.1");
+		deploy(deployer, version2);
+		assertSingleDeployment("app", version2);
+	}
+
+	@Test
+	public void swapDeploymentRemovesLeftoverSwaps() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		deployer.setSwapDeployment(true);
+		String version1 = stub.addVersion("app", "1.0.0");
+		deploy(deployer, version1);
+		muleRest.restfullyCreateServerDeployment("app-swap-1", GROUP_0_SERVERS, Collections.singletonList(stub.addVersion("app", "0.9.0")));
+
+		String version2 = stub.addVersion("app", "1.0.1");
+		deploy(deployer, version2);
+		assertSingleDeployment("app", version2);
+	}
+
+	@Test
+	public void swapDeploymentKeepsUnchangedLeftoverSwap() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		deployer.setSwapDeployment(true);
+		deploy(deployer, stub.addVersion("app", "1.0.0"));
+		// a swap whose rename did not happen
+		String version2 = stub.addVersion("app", "1.0.1");
+		String leftoverId = muleRest.restfullyCreateServerDeployment("app-swap-1", GROUP_0_SERVERS, Collections.singletonList(version2));
+		muleRest.restfullyDeployDeploymentById(leftoverId);
+
+		deploy(deployer, version2);
+		assertEquals(leftoverId, assertSingleDeployment("app", version2));
+	}
+
+	@Test
+	public void failedSwapDeploymentRollsBack() throws Exception
+	{
+		MmcDeployer deployer = newDeployer();
+		deployer.setSwapDeployment(true);
+		String version1 = stub.addVersion("app", "1.0.0");
+		deploy(deployer, version1);
+
+		String version2 = stub.addVersion("app", "1.0.1");
+		stub.setFailingVersionId(version2);
+		try
+		{
+			deploy(deployer, version2);
+			fail("failed deployment not reported");
+		} catch (Exception e)
+		{
+			assertTrue(log.toString(), log.toString().contains("rolling back to app"));
+		}
+		assertSingleDeployment("app", version1);
+	}
+
+	@Test
+	public void refusedRenameKeepsSwapDeploymentUntilReplaced() throws Exception
+	{
+		stub.setDeploymentUpdates(false);
+		MmcDeployer deployer = newDeployer();
+		deployer.setSwapDeployment(true);
+		deploy(deployer, stub.addVersion("app", "1.0.0"));
+		assertTrue(log.toString(), log.toString().contains("MMC did not rename the new deployment"));
+
+		String version2 = stub.addVersion("app", "1.0.1");
+		deploy(deployer, version2);
+		String currentId = assertSingleSwapDeployment(version2);
+
+		String version3 = stub.addVersion("app", "1.0.2");
+		stub.setFailingVersionId(version3);
+		try
+		{
+			deploy(deployer, version3);
+			fail("failed deployment not reported");
+		} catch (Exception e)
+		{
+			assertTrue(log.toString(), log.toString().contains("rolling back to app-swap-"));
+		}
+		assertEquals("the deployment that kept its temporary name is rolled back to", currentId, assertSingleSwapDeployment(version2));
+	}
+
+	@Test
+	public void previousSwapOf()
+	{
+		Map<String, String> existing = new HashMap<String, String>();
+		assertNull(MmcDeployer.previousSwapOf("app", existing, null));
+
+		existing.put("app-swap-1000", "d1");
+		existing.put("app-swap-900", "d2");
+		existing.put("app-swap-1100", "d3");
+		assertEquals("app-swap-1100", MmcDeployer.previousSwapOf("app", existing, null));
+		assertEquals("the new deployment is not its own previous one", "app-swap-1000", MmcDeployer.previousSwapOf("app", existing, "d3"));
+
+		existing.put("app", "d4");
+		assertEquals("app", MmcDeployer.previousSwapOf("app", existing, null));
+	}
+
+	private MmcDeployer newDeployer()
+	{
+		MmcDeployer deployer = new MmcDeployer(muleRest, new UploadThroughputAction());
+		deployer.setCompleteDeployment(true);
+		deployer.setWaitTimeout(30);
+		return deployer;
+	}
+
+	/**
+	 * @return the id of the only deployment
+	 */
+	private String assertSingleDeployment(String name, String versionId)
+	{
+		JsonNode deployment = assertSingleDeployment(versionId);
+		assertEquals(name, deployment.path("name").asText());
+		return deployment.path("id").asText();
+	}
+
+	/**
+	 * @return the id of the only deployment, which has a temporary swap name
+	 */
+	private String assertSingleSwapDeployment(String versionId)
+	{
+		JsonNode deployment = assertSingleDeployment(versionId);
+		assertTrue(deployment.path("name").asText(), deployment.path("name").asText().startsWith("app-swap-"));
+		return deployment.path("id").asText();
+	}
+
+	private JsonNode assertSingleDeployment(String versionId)
+	{
+		List<JsonNode> deployments = stub.getDeployments();
+		assertEquals(log.toString(), 1, deployments.size());
+		JsonNode deployment = deployments.get(0);
+		assertEquals("DEPLOYED", deployment.path("status").asText());
+		assertEquals(GROUP_0_SERVERS, texts(deployment.path("servers")));
+		assertEquals(Collections.singleton(versionId), texts(deployment.path("applications")));
+		return deployment;
+	}
+
+	private static Set<String> texts(JsonNode array)
+	{
+		Set<String> texts = new TreeSet<String>();
+		for (JsonNode node : array)
+		{
+			texts.add(node.asText());
+		}
+		return texts;
+	}
+}
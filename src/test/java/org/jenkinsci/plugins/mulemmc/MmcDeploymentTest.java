@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * Reading of {@code /deployments/{id}} into {@link MmcDeployment}.
+ */
+public class MmcDeploymentTest
+{
+	private static MmcDeployment deployment(String json) throws Exception
+	{
+		return new MmcDeployment(new ObjectMapper().readTree(json.replace('\'', '"')));
+	}
+
+	@Test
+	public void readsTargetsAndApplications() throws Exception
+	{
+		MmcDeployment deployment = deployment("{'id': 'd1', 'name': 'app', 'status': 'DEPLOYED',"
+		        + " 'servers': ['s2', {'id': 's1'}], 'applications': [{'id': 'v1'}], 'href': 'ignored'}");
+		assertEquals("d1", deployment.getId());
+		assertEquals("app", deployment.getName());
+		assertEquals(new TreeSet<String>(Arrays.asList("s1", "s2")), deployment.getServers());
+		assertTrue(deployment.getClusters().isEmpty());
+		assertEquals(new TreeSet<String>(Arrays.asList("v1")), deployment.getApplications());
+		assertTrue(deployment.isDeployed());
+		assertFalse(deployment.isFailed());
+	}
+
+	@Test
+	public void status() throws Exception
+	{
+		assertTrue(deployment("{'status': 'successful'}").isDeployed());
+		assertTrue(deployment("{'status': 'DEPLOYMENT_FAILED'}").isFailed());
+		MmcDeployment pending = deployment("{'status': 'IN_PROGRESS'}");
+		assertFalse(pending.isDeployed() || pending.isFailed());
+		MmcDeployment unknown = deployment("{}");
+		assertFalse(unknown.isDeployed() || unknown.isFailed());
+	}
+}
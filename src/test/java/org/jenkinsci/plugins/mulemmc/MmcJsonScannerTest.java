@@ -0,0 +1,145 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Streaming scans of {@link MmcJsonScanner} over listings written with single quotes for readability.
+ */
+public class MmcJsonScannerTest
+{
+	private static final String SERVERS = "{'total': 3, 'data': [" //
+	        + "{'id': 's1', 'name': 'server-1', 'groups': [{'id': 'g1', 'name': 'group-1'}]}," //
+	        + "{'name': 'server-2', 'id': 's2', 'groups': [{'name': 'group-2'}, {'name': 'group-1'}]}," //
+	        + "{'id': 's3', 'name': 'server-3', 'groups': []}]}";
+
+	@Test
+	public void findIdByNameReturnsFirstMatch() throws Exception
+	{
+		String listing = "{'data': [{'id': 'd1', 'name': 'a'}, {'name': 'b', 'id': 'd2'}, {'id': 'd3', 'name': 'b'}]}";
+		assertEquals("d2", MmcJsonScanner.findIdByName(in(listing), "b"));
+		assertEquals("d1", MmcJsonScanner.findIdByName(in(listing), "a"));
+		assertNull(MmcJsonScanner.findIdByName(in(listing), "c"));
+	}
+
+	@Test
+	public void findIdByNameStopsAtMatch() throws Exception
+	{
+		MmcJsonScanner.Page page = new MmcJsonScanner.Page();
+		InputStream in = in("{'total': 3, 'data': [{'id': 'd1', 'name': 'a'}, {'id': 'd2', 'name': 'b'}, {'id': 'd3', 'name': 'c'}]}");
+		assertEquals("d2", MmcJsonScanner.findIdByName(in, "b", page));
+		assertEquals(2, page.getEntries());
+		assertEquals(3, page.getTotal());
+		assertEquals("entries after the match are not read", new TreeSet<String>(Arrays.asList("d1", "d2")), page.getKeys());
+	}
+
+	@Test
+	public void indexIdsByNameKeepsFirstEntry() throws Exception
+	{
+		Map<String, String> ids = MmcJsonScanner.indexIdsByName(in("{'data': [{'id': 'd1', 'name': 'a', 'servers': ['s1']},"
+		        + " {'id': 'd2', 'name': 'b'}, {'id': 'd3', 'name': 'a'}, 'ignored']}"));
+		Map<String, String> expected = new HashMap<String, String>();
+		expected.put("a", "d1");
+		expected.put("b", "d2");
+		assertEquals(expected, ids);
+	}
+
+	@Test
+	public void readIdsAccumulatesPages() throws Exception
+	{
+		Set<String> ids = new TreeSet<String>();
+		MmcJsonScanner.readIds(in("{'data': [{'id': 's1'}, {'name': 'no id'}]}"), ids, null);
+		MmcJsonScanner.Page page = new MmcJsonScanner.Page();
+		MmcJsonScanner.readIds(in("{'data': [{'id': 's2'}], 'total': 3}"), ids, page);
+		assertEquals(new TreeSet<String>(Arrays.asList("s1", "s2")), ids);
+		assertEquals(1, page.getEntries());
+		assertEquals("total after the data is not seen", -1, page.getTotal());
+	}
+
+	@Test
+	public void listingWithoutDataIsEmpty() throws Exception
+	{
+		assertTrue(MmcJsonScanner.readIds(in("{'total': 0}")).isEmpty());
+		assertTrue(MmcJsonScanner.readIds(in("[]")).isEmpty());
+		assertNull(MmcJsonScanner.findIdByName(in("{'data': []}"), "a"));
+	}
+
+	@Test
+	public void findServersInGroup() throws Exception
+	{
+		assertEquals(new TreeSet<String>(Arrays.asList("s1", "s2")), MmcJsonScanner.findServersInGroup(in(SERVERS), "group-1"));
+		assertEquals(Collections.singleton("s2"), MmcJsonScanner.findServersInGroup(in(SERVERS), "group-2"));
+		assertTrue(MmcJsonScanner.findServersInGroup(in(SERVERS), "group-3").isEmpty());
+	}
+
+	@Test
+	public void indexServersByGroup() throws Exception
+	{
+		Map<String, Set<String>> serversByGroup = MmcJsonScanner.indexServersByGroup(in(SERVERS));
+		assertEquals(2, serversByGroup.size());
+		assertEquals(new TreeSet<String>(Arrays.asList("s1", "s2")), serversByGroup.get("group-1"));
+		assertEquals(Collections.singleton("s2"), serversByGroup.get("group-2"));
+	}
+
+	@Test
+	public void readDeployedApplicationIds() throws Exception
+	{
+		Set<String> applicationIds = new TreeSet<String>();
+		Set<String> withoutApplications = new TreeSet<String>();
+		MmcJsonScanner.Page page = new MmcJsonScanner.Page();
+		MmcJsonScanner.readDeployedApplicationIds(in("{'data': [{'id': 'd1', 'applications': ['v1', {'id': 'v2'}]},"
+		        + " {'id': 'd2', 'applications': []}, {'id': 'd3', 'name': 'summary only'}]}"), applicationIds, withoutApplications, page);
+		assertEquals(new TreeSet<String>(Arrays.asList("v1", "v2")), applicationIds);
+		assertEquals("empty deployment is not summarized", Collections.singleton("d3"), withoutApplications);
+		assertEquals(3, page.getEntries());
+	}
+
+	@Test
+	public void deploymentWithoutApplicationsNorIdFails() throws Exception
+	{
+		try
+		{
+			MmcJsonScanner.readDeployedApplicationIds(in("{'data': [{'name': 'app'}]}"), new TreeSet<String>(), new TreeSet<String>(), null);
+			fail("deployment without applications nor id taken for empty");
+		} catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void indexApplicationVersions() throws Exception
+	{
+		MmcJsonScanner.Page page = new MmcJsonScanner.Page();
+		Map<String, Map<String, String>> applications = MmcJsonScanner.indexApplicationVersions(in("{'data': ["
+		        + "{'name': 'app', 'versions': [{'id': 'v1', 'name': '1.0'}, {'name': '1.1', 'id': 'v2'}]},"
+		        + "{'name': 'other', 'versions': []}, {'name': 'app', 'versions': [{'id': 'v3', 'name': '2.0'}]}]}"),
+		        new HashMap<String, Map<String, String>>(), page);
+		assertEquals(2, applications.size());
+		Map<String, String> versions = new HashMap<String, String>();
+		versions.put("1.0", "v1");
+		versions.put("1.1", "v2");
+		assertEquals("first entry wins", versions, applications.get("app"));
+		assertTrue(applications.get("other").isEmpty());
+		assertEquals("listing without ids is keyed by name", new TreeSet<String>(Arrays.asList("app", "other")), page.getKeys());
+	}
+
+	private static InputStream in(String json) throws IOException
+	{
+		return new ByteArrayInputStream(json.replace('\'', '"').getBytes("UTF-8"));
+	}
+}
@@ -0,0 +1,151 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test running many deployments concurrently against an {@link MmcStub}, offline.
+ * <p>
+ * Every deployment goes through the same {@link MuleRest} calls as a build of {@link MMCDeployerBuilder}:
+ * upload, create, deploy and wait for completion. The report shows the throughput, the end-to-end and
+ * per-operation tail latencies and how many connections were used. Settings are system properties:
+ * 
+ * <pre>
+ * -Dthreads=16 -Ddeployments=200 -DarchiveKb=512 -Dservers=100 -Dgroups=10 -Dclusters=10
+ * -DlatencyMs=20 -DerrorRate=0.01 -DclusterDeploy=false
+ * </pre>
+ */
+public class MmcLoadTest
+{
+	public static void main(String args[]) throws Exception
+	{
+		int threads = Integer.getInteger("threads", 16);
+		int deploymentCount = Integer.getInteger("deployments", 200);
+		int archiveKb = Integer.getInteger("archiveKb", 512);
+		final boolean clusterDeploy = Boolean.getBoolean("clusterDeploy");
+
+		final MmcStub stub = new MmcStub(Integer.getInteger("servers", 100), Integer.getInteger("groups", 10), Integer.getInteger("clusters", 10));
+		stub.setLatencyMillis(Long.getLong("latencyMs", 20));
+		stub.setErrorRate(Double.parseDouble(System.getProperty("errorRate", "0")));
+		stub.start();
+
+		final File archive = File.createTempFile("mmc-load-test", ".zip");
+		archive.deleteOnExit();
+		writeRandom(archive, archiveKb * 1024);
+
+		try
+		{
+			final URL mmcUrl = stub.getUrl();
+			final MuleRest muleRest = new MuleRest(mmcUrl, "admin", "admin");
+			final PrintStream quiet = new PrintStream(new OutputStream()
+			{
+				@Override
+				public void write(int b)
+				{
+				}
+			});
+
+			List<Callable<Long>> deployments = new ArrayList<Callable<Long>>();
+			for (int i = 0; i < deploymentCount; i++)
+			{
+				final int n = i;
+				deployments.add(new Callable<Long>()
+				{
+					public Long call() throws Exception
+					{
+						long started = System.currentTimeMillis();
+						String name = "load-app-" + n;
+						String versionId = muleRest.restfullyUploadRepository(name, "1.0." + n, archive);
+						String deploymentId = clusterDeploy ? muleRest.restfullyCreateClusterDeployment("cluster-" + (n % stub.getClusterCount()),
+						        name, versionId) : muleRest.restfullyCreateDeployment("group-" + (n % stub.getGroupCount()), name, versionId);
+						muleRest.restfullyDeployDeploymentById(deploymentId);
+						if (!new DeploymentWaiter(muleRest, quiet, 60000).await(deploymentId, Collections.singleton(name)))
+						{
+							throw new Exception("deployment " + name + " did not complete");
+						}
+						return System.currentTimeMillis() - started;
+					}
+				});
+			}
+
+			System.out.println("Running " + deploymentCount + " deployments with " + threads + " threads against " + mmcUrl);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			long started = System.currentTimeMillis();
+			List<Long> durations = new ArrayList<Long>();
+			int failures = 0;
+			try
+			{
+				for (Future<Long> result : executor.invokeAll(deployments))
+				{
+					try
+					{
+						durations.add(result.get());
+					} catch (Exception e)
+					{
+						failures++;
+						System.out.println("FAILED: " + e.getCause());
+					}
+				}
+			} finally
+			{
+				executor.shutdown();
+			}
+			long elapsed = System.currentTimeMillis() - started;
+
+			Collections.sort(durations);
+			System.out.println();
+			System.out.println(String.format("%d deployments, %d failed, in %d ms: %.2f deployments/s", deploymentCount, failures, elapsed,
+			        durations.size() * 1000.0 / Math.max(1, elapsed)));
+			System.out.println(String.format("deployment latency ms: p50 %d, p95 %d, p99 %d, max %d", percentile(durations, 50),
+			        percentile(durations, 95), percentile(durations, 99), percentile(durations, 100)));
+			System.out.println(String.format("connections: %d opened, %d requests at most in flight, %d pooled at the end", stub.getConnections(),
+			        stub.getMaxInFlight(), MmcConnectionRegistry.getConnectionManager(mmcUrl, "admin").getConnectionsInPool()));
+			System.out.println(String.format("stub: %d requests, %d injected errors", stub.getRequests(), stub.getErrors()));
+			System.out.println();
+			System.out.println(String.format("%-36s %8s %7s %12s %8s %8s %8s %8s", "operation", "calls", "errors", "bytes", "p50", "p95", "p99",
+			        "max"));
+			for (MmcOperationStats stats : MmcMetrics.forMmc(mmcUrl).getOperations())
+			{
+				System.out.println(String.format("%-36s %8d %7d %12d %8d %8d %8d %8d", stats.getOperation(), stats.getCount(), stats.getErrors(),
+				        stats.getBytes(), stats.getP50Millis(), stats.getP95Millis(), stats.getP99Millis(), stats.getMaxMillis()));
+			}
+		} finally
+		{
+			MmcConnectionRegistry.shutdown();
+			stub.stop();
+		}
+	}
+
+	private static long percentile(List<Long> sorted, int percentile)
+	{
+		if (sorted.isEmpty()) { return 0; }
+		int index = (int) Math.ceil(sorted.size() * percentile / 100.0) - 1;
+		return sorted.get(Math.max(0, index));
+	}
+
+	private static void writeRandom(File file, int bytes) throws IOException
+	{
+		byte[] content = new byte[bytes];
+		new Random(42).nextBytes(content);
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(content);
+		} finally
+		{
+			out.close();
+		}
+	}
+}
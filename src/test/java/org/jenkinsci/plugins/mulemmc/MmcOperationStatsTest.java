@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Counters and latency histogram of {@link MmcOperationStats}.
+ */
+public class MmcOperationStatsTest
+{
+	@Test
+	public void countsCalls()
+	{
+		MmcOperationStats stats = new MmcOperationStats("GET /servers");
+		assertEquals(0, stats.getP50Millis());
+		assertEquals(0, stats.getMeanMillis());
+
+		stats.record(10, false, 1000);
+		stats.record(30, true, -1);
+		assertEquals(2, stats.getCount());
+		assertEquals(1, stats.getErrors());
+		assertEquals(1000, stats.getBytes());
+		assertEquals(20, stats.getMeanMillis());
+		assertEquals(30, stats.getMaxMillis());
+	}
+
+	@Test
+	public void percentilesOverstateByLessThanABucket()
+	{
+		MmcOperationStats stats = new MmcOperationStats("GET /servers");
+		for (int millis = 1; millis <= 100; millis++)
+		{
+			stats.record(millis, false, 0);
+		}
+		assertBucketBound(50, stats.getP50Millis());
+		assertBucketBound(95, stats.getP95Millis());
+		assertBucketBound(99, stats.getP99Millis());
+		assertEquals("no percentile exceeds the maximum", 100, stats.getPercentileMillis(100));
+	}
+
+	@Test
+	public void smallLatenciesHaveExactBuckets()
+	{
+		MmcOperationStats stats = new MmcOperationStats("GET /servers");
+		stats.record(0, false, 0);
+		stats.record(1, false, 0);
+		stats.record(2, false, 0);
+		stats.record(1000, false, 0);
+		assertEquals(1, stats.getPercentileMillis(50));
+		assertEquals(2, stats.getPercentileMillis(75));
+		assertBucketBound(1000, stats.getPercentileMillis(80));
+	}
+
+	@Test
+	public void latenciesAboveTheLastBucketAreCounted()
+	{
+		MmcOperationStats stats = new MmcOperationStats("GET /servers");
+		stats.record(Long.MAX_VALUE / 2, false, 0);
+		assertEquals(1, stats.getCount());
+		assertTrue(stats.getP99Millis() > 0);
+	}
+
+	private static void assertBucketBound(long exact, long reported)
+	{
+		assertTrue(reported + " reported for " + exact, reported >= exact && reported < exact * 1.19);
+	}
+}
@@ -0,0 +1,121 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+/**
+ * Synthetic MMC list responses shaped like those of a real MMC, for benchmarks and load tests.
+ * <p>
+ * Entry {@code i} is named {@code server-i}, {@code cluster-i} or {@code app-i} and has the id
+ * {@code local$<kind>-i}; server {@code i} belongs to {@code group-(i % groups)}.
+ */
+public final class MmcPayloads
+{
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private MmcPayloads() {
+	}
+
+	/**
+	 * @return a {@code /servers} listing
+	 */
+	public static byte[] servers(int count, int groups) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(count * 400);
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+		json.writeStartObject();
+		json.writeNumberField("total", count);
+		json.writeArrayFieldStart("data");
+		for (int i = 0; i < count; i++)
+		{
+			json.writeStartObject();
+			json.writeStringField("href", "http://localhost:8080/mmc/api/servers/local$server-" + i);
+			json.writeStringField("id", "local$server-" + i);
+			json.writeStringField("name", "server-" + i);
+			json.writeStringField("agentUrl", "https://10.0." + (i / 250) + "." + (i % 250) + ":7777/mmc-support");
+			json.writeStringField("status", "RUNNING");
+			json.writeArrayFieldStart("addresses");
+			json.writeString("10.0." + (i / 250) + "." + (i % 250));
+			json.writeEndArray();
+			json.writeArrayFieldStart("groups");
+			int group = i % groups;
+			json.writeStartObject();
+			json.writeStringField("id", "local$group-" + group);
+			json.writeStringField("name", "group-" + group);
+			json.writeEndObject();
+			json.writeEndArray();
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		json.writeEndObject();
+		json.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return a {@code /serverGroups} or {@code /clusters} listing, {@code kind} being "group" or "cluster"
+	 */
+	public static byte[] named(String kind, int count) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(count * 200);
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+		json.writeStartObject();
+		json.writeNumberField("total", count);
+		json.writeArrayFieldStart("data");
+		for (int i = 0; i < count; i++)
+		{
+			json.writeStartObject();
+			json.writeStringField("href", "http://localhost:8080/mmc/api/" + kind + "s/local$" + kind + "-" + i);
+			json.writeStringField("name", kind + "-" + i);
+			json.writeArrayFieldStart("servers");
+			json.writeString("local$server-" + (2 * i));
+			json.writeString("local$server-" + (2 * i + 1));
+			json.writeEndArray();
+			json.writeStringField("id", "local$" + kind + "-" + i);
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		json.writeEndObject();
+		json.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return a {@code /repository} listing of {@code count} applications with {@code versions} versions each,
+	 *         version {@code j} being named {@code 1.0.j}
+	 */
+	public static byte[] repository(int count, int versions) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(count * (120 + versions * 150));
+		JsonGenerator json = JSON_FACTORY.createJsonGenerator(out, JsonEncoding.UTF8);
+		json.writeStartObject();
+		json.writeNumberField("total", count);
+		json.writeArrayFieldStart("data");
+		for (int i = 0; i < count; i++)
+		{
+			json.writeStartObject();
+			json.writeStringField("href", "http://localhost:8080/mmc/api/repository/local$app-" + i);
+			json.writeStringField("id", "local$app-" + i);
+			json.writeStringField("name", "app-" + i);
+			json.writeArrayFieldStart("versions");
+			for (int j = 0; j < versions; j++)
+			{
+				json.writeStartObject();
+				json.writeStringField("id", "local$app-" + i + "-" + j);
+				json.writeStringField("name", "1.0." + j);
+				json.writeStringField("parentPath", "/Applications/app-" + i);
+				json.writeEndObject();
+			}
+			json.writeEndArray();
+			json.writeEndObject();
+		}
+		json.writeEndArray();
+		json.writeEndObject();
+		json.close();
+		return out.toByteArray();
+	}
+}
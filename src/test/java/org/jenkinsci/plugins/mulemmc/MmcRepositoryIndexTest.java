@@ -0,0 +1,68 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Lookups and updates of {@link MmcRepositoryIndex}.
+ */
+public class MmcRepositoryIndexTest
+{
+	private MmcRepositoryIndex index;
+
+	@Before
+	public void buildIndex()
+	{
+		Map<String, String> versions = new HashMap<String, String>();
+		versions.put("1.0", "v1");
+		versions.put("1.1", "v2");
+		Map<String, Map<String, String>> applications = new HashMap<String, Map<String, String>>();
+		applications.put("app", versions);
+		applications.put("empty", Collections.<String, String> emptyMap());
+		index = new MmcRepositoryIndex(applications);
+	}
+
+	@Test
+	public void looksUpVersions()
+	{
+		assertEquals("v1", index.getVersionId("app", "1.0"));
+		assertNull(index.getVersionId("app", "2.0"));
+		assertNull(index.getVersionId("other", "1.0"));
+		assertEquals(2, index.getVersions("app").size());
+		assertTrue(index.getVersions("other").isEmpty());
+		assertEquals("applications without versions are left out", Collections.singleton("app"), index.getApplications());
+	}
+
+	@Test
+	public void putAddsAndReplacesVersions()
+	{
+		index.put("other", "1.0", "v3");
+		assertEquals("v3", index.getVersionId("other", "1.0"));
+
+		index.put("app", "1.0", "v4");
+		assertEquals("v4", index.getVersionId("app", "1.0"));
+		index.remove("v1");
+		assertEquals("removing the replaced id keeps the new one", "v4", index.getVersionId("app", "1.0"));
+
+		index.put("app", null, "v5");
+		assertEquals(2, index.getVersions("app").size());
+	}
+
+	@Test
+	public void removeDropsVersion()
+	{
+		index.remove("v2");
+		assertNull(index.getVersionId("app", "1.1"));
+		index.remove("v1");
+		assertTrue(index.getApplications().isEmpty());
+		index.remove("unknown");
+	}
+}
@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link MmcRepositoryRetention} against an {@link MmcStub}, whose {@code /deployments} listing does not carry
+ * the applications of each deployment.
+ */
+public class MmcRepositoryRetentionTest
+{
+	private MmcStub stub;
+	private MuleRest muleRest;
+	private List<String> versionIds;
+	private PrintStream logger;
+
+	@Before
+	public void startStub() throws IOException
+	{
+		stub = new MmcStub(4, 2, 1);
+		stub.start();
+		muleRest = new MuleRest(stub.getUrl(), "admin", "admin");
+		versionIds = new ArrayList<String>();
+		for (int i = 0; i < 5; i++)
+		{
+			versionIds.add(stub.addVersion("app", "1.0." + i));
+		}
+		logger = new PrintStream(new ByteArrayOutputStream(), true);
+	}
+
+	@After
+	public void stopStub()
+	{
+		stub.stop();
+	}
+
+	@Test
+	public void deployedVersionIsNeverDeleted() throws Exception
+	{
+		muleRest.restfullyCreateServerDeployment("app", Collections.singletonList("local$server-0"), Collections.singletonList(versionIds.get(0)));
+
+		MmcRepositoryRetention retention = new MmcRepositoryRetention(muleRest);
+		retention.setKeepVersions(1);
+		retention.setBatchDelaySeconds(0);
+		assertEquals(3, retention.run(logger, "app"));
+		assertEquals(new TreeSet<String>(Arrays.asList(versionIds.get(0), versionIds.get(4))), stub.getVersionIds());
+	}
+
+	@Test
+	public void dryRunDeletesNothing() throws Exception
+	{
+		MmcRepositoryRetention retention = new MmcRepositoryRetention(muleRest);
+		retention.setKeepVersions(2);
+		retention.setDryRun(true);
+		assertEquals(3, retention.run(logger, ""));
+		assertEquals(new TreeSet<String>(versionIds), stub.getVersionIds());
+	}
+}
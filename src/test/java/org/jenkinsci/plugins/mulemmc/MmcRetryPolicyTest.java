@@ -0,0 +1,49 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Backoff delays of {@link MmcRetryPolicy}.
+ */
+public class MmcRetryPolicyTest
+{
+	@After
+	public void resetConfiguration()
+	{
+		MmcRetryPolicy.configure(MmcRetryPolicy.DEFAULT_MAX_RETRIES, MmcRetryPolicy.DEFAULT_BASE_DELAY_MILLIS,
+		        MmcRetryPolicy.DEFAULT_MAX_DELAY_MILLIS);
+	}
+
+	@Test
+	public void delayDoublesUpToTheCeiling()
+	{
+		MmcRetryPolicy.configure(3, 100, 400);
+		for (int i = 0; i < 100; i++)
+		{
+			assertDelayBelow(100, MmcRetryPolicy.delayMillis(1));
+			assertDelayBelow(200, MmcRetryPolicy.delayMillis(2));
+			assertDelayBelow(400, MmcRetryPolicy.delayMillis(3));
+			assertDelayBelow(400, MmcRetryPolicy.delayMillis(50));
+		}
+	}
+
+	@Test
+	public void invalidSettingsFallBackToDefaults()
+	{
+		MmcRetryPolicy.configure(-1, 0, 10);
+		assertEquals("negative retries disable retrying", 0, MmcRetryPolicy.getMaxRetries());
+		for (int i = 0; i < 100; i++)
+		{
+			assertDelayBelow(MmcRetryPolicy.DEFAULT_BASE_DELAY_MILLIS, MmcRetryPolicy.delayMillis(1));
+		}
+	}
+
+	private static void assertDelayBelow(long ceiling, long delay)
+	{
+		assertTrue(delay + " not below " + ceiling, delay >= 0 && delay < ceiling);
+	}
+}
@@ -0,0 +1,656 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for the MMC REST API, serving the endpoints {@link MuleRest} uses under
+ * {@code http://localhost:<port>/mmc/api}: {@code /servers}, {@code /serverGroups}, {@code /clusters},
+ * {@code /serverGroups/{id}/servers}, {@code /repository}, {@code /deployments}, {@code /deployments/{id}/deploy},
+ * updates of a deployment with {@code PUT /deployments/{id}} and the application status of servers and clusters.
+ * <p>
+ * The size of the topology listings, the latency of every response and the share of requests failing
+ * with 503 are configurable. The stub counts requests and the client connections it served.
+ */
+public final class MmcStub
+{
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	private static final String CONTEXT = "/mmc/api";
+	private static final Pattern PART_NAME = Pattern.compile("name=\"(name|version)\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)\r\n");
+
+	private final int serverCount;
+	private final int groupCount;
+	private final int clusterCount;
+	private volatile long latencyMillis;
+	private volatile double errorRate;
+	private volatile boolean groupServersEndpoint = true;
+	private volatile boolean paging = true;
+	private volatile boolean deploymentUpdates = true;
+	private volatile String failingVersionId;
+
+	private final Random random = new Random();
+	private final byte[] servers;
+	private final byte[] serverGroups;
+	private final byte[] clusters;
+
+	/** Version id to application name and version */
+	private final Map<String, String[]> repository = new LinkedHashMap<String, String[]>();
+	private final Map<String, ObjectNode> deployments = new LinkedHashMap<String, ObjectNode>();
+	private final AtomicInteger ids = new AtomicInteger();
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final Set<String> connections = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param serverCount servers, spread evenly over {@code groupCount} server groups
+	 */
+	public MmcStub(int serverCount, int groupCount, int clusterCount) throws IOException {
+		this.serverCount = serverCount;
+		this.groupCount = groupCount;
+		this.clusterCount = clusterCount;
+		this.servers = MmcPayloads.servers(serverCount, groupCount);
+		this.serverGroups = MmcPayloads.named("group", groupCount);
+		this.clusters = MmcPayloads.named("cluster", clusterCount);
+	}
+
+	/**
+	 * @param latencyMillis delay before every response
+	 */
+	public void setLatencyMillis(long latencyMillis)
+	{
+		this.latencyMillis = latencyMillis;
+	}
+
+	/**
+	 * @param errorRate share of requests answered with 503, between 0 and 1
+	 */
+	public void setErrorRate(double errorRate)
+	{
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * @param groupServersEndpoint false to answer {@code /serverGroups/{id}/servers} with 404 like older MMCs
+	 */
+	public void setGroupServersEndpoint(boolean groupServersEndpoint)
+	{
+		this.groupServersEndpoint = groupServersEndpoint;
+	}
+
+	/**
+	 * @param paging false to ignore {@code offset} and {@code limit} and answer every listing whole and without
+	 *        {@code total}, like MMCs that do not page
+	 */
+	public void setPaging(boolean paging)
+	{
+		this.paging = paging;
+	}
+
+	/**
+	 * @param deploymentUpdates false to answer {@code PUT /deployments/{id}} with 405 like MMCs that cannot update
+	 *        or rename a deployment
+	 */
+	public void setDeploymentUpdates(boolean deploymentUpdates)
+	{
+		this.deploymentUpdates = deploymentUpdates;
+	}
+
+	/**
+	 * @param failingVersionId deployments of this application version fail when activated, null for none
+	 */
+	public void setFailingVersionId(String failingVersionId)
+	{
+		this.failingVersionId = failingVersionId;
+	}
+
+	/**
+	 * Starts the stub on a free port.
+	 */
+	public void start() throws IOException
+	{
+		executor = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(executor);
+		server.createContext(CONTEXT, new HttpHandler()
+		{
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				try
+				{
+					serve(exchange);
+				} finally
+				{
+					exchange.close();
+				}
+			}
+		});
+		server.start();
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public URL getUrl() throws IOException
+	{
+		return new URL("http://localhost:" + server.getAddress().getPort() + CONTEXT);
+	}
+
+	public int getServerCount()
+	{
+		return serverCount;
+	}
+
+	public int getGroupCount()
+	{
+		return groupCount;
+	}
+
+	public int getClusterCount()
+	{
+		return clusterCount;
+	}
+
+	public long getRequests()
+	{
+		return requests.get();
+	}
+
+	public long getErrors()
+	{
+		return errors.get();
+	}
+
+	/**
+	 * @return the number of distinct client connections served
+	 */
+	public int getConnections()
+	{
+		return connections.size();
+	}
+
+	/**
+	 * Adds an application version to the repository as if it had been uploaded.
+	 * 
+	 * @return the id of the version
+	 */
+	public String addVersion(String name, String version)
+	{
+		synchronized (repository)
+		{
+			String versionId = "local$version-" + ids.incrementAndGet();
+			repository.put(versionId, new String[] { name, version });
+			return versionId;
+		}
+	}
+
+	/**
+	 * @return the ids of the versions in the repository
+	 */
+	public Set<String> getVersionIds()
+	{
+		synchronized (repository)
+		{
+			return new TreeSet<String>(repository.keySet());
+		}
+	}
+
+	/**
+	 * @return copies of the deployments, in creation order
+	 */
+	public List<JsonNode> getDeployments()
+	{
+		List<JsonNode> copies = new ArrayList<JsonNode>();
+		synchronized (deployments)
+		{
+			for (ObjectNode deployment : deployments.values())
+			{
+				copies.add(deployment.deepCopy());
+			}
+		}
+		return copies;
+	}
+
+	/**
+	 * @return the highest number of requests served at the same time
+	 */
+	public int getMaxInFlight()
+	{
+		return maxInFlight.get();
+	}
+
+	private void serve(HttpExchange exchange) throws IOException
+	{
+		requests.incrementAndGet();
+		connections.add(exchange.getRemoteAddress().toString());
+		int concurrent = inFlight.incrementAndGet();
+		int max = maxInFlight.get();
+		while (concurrent > max && !maxInFlight.compareAndSet(max, concurrent))
+		{
+			max = maxInFlight.get();
+		}
+		try
+		{
+			byte[] body = readFully(exchange.getRequestBody());
+			if (latencyMillis > 0)
+			{
+				Thread.sleep(latencyMillis);
+			}
+			if (errorRate > 0 && nextDouble() < errorRate)
+			{
+				errors.incrementAndGet();
+				respond(exchange, 503, "{\"message\":\"injected failure\"}".getBytes("UTF-8"));
+				return;
+			}
+			route(exchange, exchange.getRequestMethod(), exchange.getRequestURI().getPath().substring(CONTEXT.length()), body);
+		} catch (InterruptedException e)
+		{
+			respond(exchange, 503, new byte[0]);
+		} finally
+		{
+			inFlight.decrementAndGet();
+		}
+	}
+
+	private void route(HttpExchange exchange, String method, String path, byte[] body) throws IOException
+	{
+		String[] segments = path.split("/");
+		String collection = segments.length > 1 ? segments[1] : "";
+		String id = segments.length > 2 ? segments[2] : null;
+		String action = segments.length > 3 ? segments[3] : null;
+
+		if ("GET".equals(method) && id == null)
+		{
+			if ("servers".equals(collection))
+			{
+				respond(exchange, 200, paged(exchange, servers));
+			} else if ("serverGroups".equals(collection))
+			{
+				respond(exchange, 200, paged(exchange, serverGroups));
+			} else if ("clusters".equals(collection))
+			{
+				respond(exchange, 200, paged(exchange, clusters));
+			} else if ("repository".equals(collection))
+			{
+				respond(exchange, 200, paged(exchange, repositoryListing()));
+			} else if ("deployments".equals(collection))
+			{
+				respond(exchange, 200, paged(exchange, deploymentListing()));
+			} else
+			{
+				respond(exchange, 404, new byte[0]);
+			}
+		} else if ("GET".equals(method) && "serverGroups".equals(collection) && "servers".equals(action))
+		{
+			byte[] groupServers = groupServersEndpoint ? groupServers(id) : null;
+			respond(exchange, groupServers != null ? 200 : 404, groupServers != null ? paged(exchange, groupServers) : new byte[0]);
+		} else if ("GET".equals(method) && "applications".equals(action))
+		{
+			respond(exchange, 200, applicationsStatus());
+		} else if ("repository".equals(collection))
+		{
+			if ("POST".equals(method) && id == null)
+			{
+				postRepository(exchange, body);
+			} else if ("DELETE".equals(method) && id != null)
+			{
+				respond(exchange, remove(repository, id) ? 200 : 404, new byte[0]);
+			} else
+			{
+				respond(exchange, 405, new byte[0]);
+			}
+		} else if ("deployments".equals(collection))
+		{
+			if ("POST".equals(method) && id == null)
+			{
+				postDeployment(exchange, body);
+			} else if ("POST".equals(method) && "deploy".equals(action))
+			{
+				respond(exchange, deploy(id) ? 200 : 404, new byte[0]);
+			} else if ("PUT".equals(method) && id != null && action == null && deploymentUpdates)
+			{
+				respond(exchange, putDeployment(id, body) ? 200 : 404, new byte[0]);
+			} else if ("GET".equals(method))
+			{
+				ObjectNode deployment;
+				synchronized (deployments)
+				{
+					deployment = deployments.get(id);
+				}
+				respond(exchange, deployment != null ? 200 : 404, deployment != null ? OBJECT_MAPPER.writeValueAsBytes(deployment) : new byte[0]);
+			} else if ("DELETE".equals(method))
+			{
+				respond(exchange, remove(deployments, id) ? 200 : 404, new byte[0]);
+			} else
+			{
+				respond(exchange, 405, new byte[0]);
+			}
+		} else
+		{
+			respond(exchange, 404, new byte[0]);
+		}
+	}
+
+	private void postRepository(HttpExchange exchange, byte[] body) throws IOException
+	{
+		String name = null;
+		String version = null;
+		Matcher matcher = PART_NAME.matcher(new String(body, "ISO-8859-1"));
+		while (matcher.find())
+		{
+			if ("name".equals(matcher.group(1)))
+			{
+				name = matcher.group(2);
+			} else
+			{
+				version = matcher.group(2);
+			}
+		}
+		if (name == null || version == null)
+		{
+			respond(exchange, 400, new byte[0]);
+			return;
+		}
+
+		String versionId;
+		synchronized (repository)
+		{
+			for (String[] existing : repository.values())
+			{
+				if (existing[0].equals(name) && existing[1].equals(version))
+				{
+					respond(exchange, 409, new byte[0]);
+					return;
+				}
+			}
+			versionId = "local$version-" + ids.incrementAndGet();
+			repository.put(versionId, new String[] { name, version });
+		}
+		ObjectNode result = OBJECT_MAPPER.createObjectNode();
+		result.put("versionId", versionId);
+		respond(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(result));
+	}
+
+	private void postDeployment(HttpExchange exchange, byte[] body) throws IOException
+	{
+		JsonNode request = OBJECT_MAPPER.readTree(body);
+		ObjectNode deployment = OBJECT_MAPPER.createObjectNode();
+		String deploymentId = "local$deployment-" + ids.incrementAndGet();
+		deployment.put("id", deploymentId);
+		deployment.put("name", request.path("name").asText());
+		deployment.put("status", "UNDEPLOYED");
+		deployment.put("servers", copy(request.path("servers")));
+		deployment.put("clusters", copy(request.path("clusters")));
+		deployment.put("applications", copy(request.path("applications")));
+		synchronized (deployments)
+		{
+			deployments.put(deploymentId, deployment);
+		}
+		ObjectNode result = OBJECT_MAPPER.createObjectNode();
+		result.put("id", deploymentId);
+		respond(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(result));
+	}
+
+	/**
+	 * Replaces the name, targets and applications of a deployment, keeping its status.
+	 */
+	private boolean putDeployment(String deploymentId, byte[] body) throws IOException
+	{
+		JsonNode request = OBJECT_MAPPER.readTree(body);
+		synchronized (deployments)
+		{
+			ObjectNode deployment = deployments.get(deploymentId);
+			if (deployment == null) { return false; }
+			deployment.put("name", request.path("name").asText());
+			deployment.put("servers", copy(request.path("servers")));
+			deployment.put("clusters", copy(request.path("clusters")));
+			deployment.put("applications", copy(request.path("applications")));
+			return true;
+		}
+	}
+
+	private boolean deploy(String deploymentId)
+	{
+		synchronized (deployments)
+		{
+			ObjectNode deployment = deployments.get(deploymentId);
+			if (deployment == null) { return false; }
+			boolean fails = false;
+			for (JsonNode versionId : deployment.path("applications"))
+			{
+				fails |= versionId.asText().equals(failingVersionId);
+			}
+			deployment.put("status", fails ? "FAILED" : "DEPLOYED");
+			return true;
+		}
+	}
+
+	private static ArrayNode copy(JsonNode ids)
+	{
+		ArrayNode copy = OBJECT_MAPPER.createArrayNode();
+		for (JsonNode id : ids)
+		{
+			copy.add(id.asText());
+		}
+		return copy;
+	}
+
+	private static boolean remove(Map<String, ?> map, String id)
+	{
+		synchronized (map)
+		{
+			return map.remove(id) != null;
+		}
+	}
+
+	private byte[] repositoryListing() throws IOException
+	{
+		Map<String, ArrayNode> versionsByName = new LinkedHashMap<String, ArrayNode>();
+		synchronized (repository)
+		{
+			for (Map.Entry<String, String[]> entry : repository.entrySet())
+			{
+				ArrayNode versions = versionsByName.get(entry.getValue()[0]);
+				if (versions == null)
+				{
+					versions = OBJECT_MAPPER.createArrayNode();
+					versionsByName.put(entry.getValue()[0], versions);
+				}
+				ObjectNode version = versions.addObject();
+				version.put("id", entry.getKey());
+				version.put("name", entry.getValue()[1]);
+			}
+		}
+		ArrayNode data = OBJECT_MAPPER.createArrayNode();
+		for (Map.Entry<String, ArrayNode> application : versionsByName.entrySet())
+		{
+			ObjectNode entry = data.addObject();
+			entry.put("name", application.getKey());
+			entry.put("versions", application.getValue());
+		}
+		return listing(data);
+	}
+
+	private byte[] deploymentListing() throws IOException
+	{
+		ArrayNode data = OBJECT_MAPPER.createArrayNode();
+		synchronized (deployments)
+		{
+			for (ObjectNode deployment : deployments.values())
+			{
+				ObjectNode entry = data.addObject();
+				entry.put("id", deployment.path("id").asText());
+				entry.put("name", deployment.path("name").asText());
+				entry.put("status", deployment.path("status").asText());
+			}
+		}
+		return listing(data);
+	}
+
+	/**
+	 * @return the servers of the group with the given id, server i being a member of group i % groups
+	 */
+	/**
+	 * @return the listing of the servers of a group, null for an unknown group
+	 */
+	private byte[] groupServers(String groupId) throws IOException
+	{
+		int group = Integer.parseInt(groupId.substring(groupId.lastIndexOf('-') + 1));
+		if (group >= groupCount) { return null; }
+		ArrayNode data = OBJECT_MAPPER.createArrayNode();
+		for (int i = group; i < serverCount; i += groupCount)
+		{
+			ObjectNode entry = data.addObject();
+			entry.put("id", "local$server-" + i);
+			entry.put("name", "server-" + i);
+		}
+		return listing(data);
+	}
+
+	/**
+	 * @return every application of a deployed deployment as started, on whichever target is asked
+	 */
+	private byte[] applicationsStatus() throws IOException
+	{
+		List<String> versionIds = new ArrayList<String>();
+		synchronized (deployments)
+		{
+			for (ObjectNode deployment : deployments.values())
+			{
+				if ("DEPLOYED".equals(deployment.path("status").asText()))
+				{
+					for (JsonNode versionId : deployment.path("applications"))
+					{
+						versionIds.add(versionId.asText());
+					}
+				}
+			}
+		}
+		ArrayNode data = OBJECT_MAPPER.createArrayNode();
+		synchronized (repository)
+		{
+			for (String versionId : versionIds)
+			{
+				String[] application = repository.get(versionId);
+				if (application != null)
+				{
+					ObjectNode entry = data.addObject();
+					entry.put("name", application[0]);
+					entry.put("versionId", versionId);
+					entry.put("status", "STARTED");
+				}
+			}
+		}
+		return listing(data);
+	}
+
+	private static byte[] listing(ArrayNode data) throws IOException
+	{
+		ObjectNode listing = OBJECT_MAPPER.createObjectNode();
+		listing.put("total", data.size());
+		listing.put("data", data);
+		return OBJECT_MAPPER.writeValueAsBytes(listing);
+	}
+
+	private synchronized double nextDouble()
+	{
+		return random.nextDouble();
+	}
+
+	/**
+	 * Cuts the page selected by the {@code offset} and {@code limit} query parameters out of a listing.
+	 */
+	private byte[] paged(HttpExchange exchange, byte[] listing) throws IOException
+	{
+		if (!paging)
+		{
+			ObjectNode whole = OBJECT_MAPPER.createObjectNode();
+			whole.put("data", OBJECT_MAPPER.readTree(listing).path("data"));
+			return OBJECT_MAPPER.writeValueAsBytes(whole);
+		}
+		String query = exchange.getRequestURI().getQuery();
+		if (query == null || !query.contains("limit=")) { return listing; }
+		int offset = 0;
+		int limit = Integer.MAX_VALUE;
+		for (String parameter : query.split("&"))
+		{
+			if (parameter.startsWith("offset="))
+			{
+				offset = Integer.parseInt(parameter.substring("offset=".length()));
+			} else if (parameter.startsWith("limit="))
+			{
+				limit = Integer.parseInt(parameter.substring("limit=".length()));
+			}
+		}
+
+		JsonNode data = OBJECT_MAPPER.readTree(listing).path("data");
+		ObjectNode page = OBJECT_MAPPER.createObjectNode();
+		page.put("total", data.size());
+		ArrayNode pageData = page.putArray("data");
+		for (int i = offset; i < data.size() && i - offset < limit; i++)
+		{
+			pageData.add(data.get(i));
+		}
+		return OBJECT_MAPPER.writeValueAsBytes(page);
+	}
+
+	private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		if (body.length > 0)
+		{
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1)
+		{
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
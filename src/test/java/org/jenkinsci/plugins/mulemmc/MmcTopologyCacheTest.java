@@ -0,0 +1,128 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.mulemmc.MmcTopologyCache.Listing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Time-to-live and invalidation of {@link MmcTopologyCache}. Caches are shared per MMC URL, so every test uses
+ * a URL of its own.
+ */
+public class MmcTopologyCacheTest
+{
+	private static final AtomicInteger MMCS = new AtomicInteger();
+
+	private MmcTopologyCache cache;
+	private CountingLoader loader;
+
+	/**
+	 * Loads the number of loads so far.
+	 */
+	private static class CountingLoader implements MmcTopologyCache.Loader<Integer>
+	{
+		private int loads;
+
+		public Integer load() throws Exception
+		{
+			return ++loads;
+		}
+	}
+
+	@Before
+	public void createCache() throws Exception
+	{
+		MmcTopologyCache.setTtlSeconds(60);
+		cache = MmcTopologyCache.forMmc(new URL("http://mmc-" + MMCS.incrementAndGet() + ".invalid/mmc/api"));
+		loader = new CountingLoader();
+	}
+
+	@After
+	public void resetTtl()
+	{
+		MmcTopologyCache.setTtlSeconds(MmcTopologyCache.DEFAULT_TTL_SECONDS);
+	}
+
+	@Test
+	public void listingIsLoadedOnce() throws Exception
+	{
+		assertEquals(1, cache.get(Listing.SERVERS, loader).intValue());
+		assertEquals(1, cache.get(Listing.SERVERS, loader).intValue());
+		assertEquals(1, cache.<Integer> peek(Listing.SERVERS).intValue());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+
+		assertEquals("listings are cached separately", 2, cache.get(Listing.CLUSTERS, loader).intValue());
+		assertEquals("keys are cached separately", 3, cache.get(Listing.GROUP_SERVERS, "group-1", loader).intValue());
+		assertEquals(4, cache.get(Listing.GROUP_SERVERS, "group-2", loader).intValue());
+		assertEquals(3, cache.get(Listing.GROUP_SERVERS, "group-1", loader).intValue());
+	}
+
+	@Test
+	public void listingExpires() throws Exception
+	{
+		MmcTopologyCache.setTtlSeconds(1);
+		assertEquals(1, cache.get(Listing.SERVERS, loader).intValue());
+		Thread.sleep(1100);
+		assertNull(cache.peek(Listing.SERVERS));
+		assertEquals(2, cache.get(Listing.SERVERS, loader).intValue());
+	}
+
+	@Test
+	public void cachingIsOffByDefault()
+	{
+		MmcTopologyCache.setTtlSeconds(MmcTopologyCache.DEFAULT_TTL_SECONDS);
+		assertFalse(MmcTopologyCache.isEnabled());
+	}
+
+	@Test
+	public void zeroTtlDisablesCaching() throws Exception
+	{
+		MmcTopologyCache.setTtlSeconds(0);
+		assertEquals(1, cache.get(Listing.SERVERS, loader).intValue());
+		assertEquals(2, cache.get(Listing.SERVERS, loader).intValue());
+		assertEquals(0, cache.getMisses());
+	}
+
+	@Test
+	public void invalidateDropsListingAndItsKeys() throws Exception
+	{
+		cache.get(Listing.SERVERS, loader);
+		cache.get(Listing.GROUP_SERVERS, "group-1", loader);
+		cache.get(Listing.CLUSTERS, loader);
+
+		cache.invalidate(Listing.SERVERS);
+		assertNull(cache.peek(Listing.SERVERS));
+		assertEquals(4, cache.get(Listing.SERVERS, loader).intValue());
+
+		cache.invalidate(Listing.GROUP_SERVERS);
+		assertEquals(5, cache.get(Listing.GROUP_SERVERS, "group-1", loader).intValue());
+		assertEquals("other listings are kept", 3, cache.get(Listing.CLUSTERS, loader).intValue());
+
+		cache.invalidateAll();
+		assertEquals(6, cache.get(Listing.CLUSTERS, loader).intValue());
+	}
+
+	@Test
+	public void listingInvalidatedWhileLoadingIsNotKept() throws Exception
+	{
+		MmcTopologyCache.Loader<Integer> invalidating = new MmcTopologyCache.Loader<Integer>()
+		{
+			public Integer load() throws Exception
+			{
+				cache.invalidate(Listing.DEPLOYMENTS);
+				return loader.load();
+			}
+		};
+		assertEquals(1, cache.get(Listing.DEPLOYMENTS, invalidating).intValue());
+		assertNull(cache.peek(Listing.DEPLOYMENTS));
+		assertEquals(2, cache.get(Listing.DEPLOYMENTS, loader).intValue());
+	}
+}
@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * Body of the {@code POST /deployments} built by {@link MuleRest#deploymentRequest}.
+ */
+public class MuleRestDeploymentRequestTest
+{
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Test
+	public void serverDeploymentOfSeveralApplications() throws Exception
+	{
+		String request = MuleRest.deploymentRequest("batch", "servers", Arrays.asList("s1", "s2"), Arrays.asList("v1", "v2", "v3"));
+		assertEquals(OBJECT_MAPPER.readTree("{\"name\": \"batch\", \"servers\": [\"s1\", \"s2\"], \"applications\": [\"v1\", \"v2\", \"v3\"]}"),
+		        OBJECT_MAPPER.readTree(request));
+	}
+
+	@Test
+	public void clusterDeployment() throws Exception
+	{
+		String request = MuleRest.deploymentRequest("app", "clusters", Collections.singletonList("c1"), Collections.singletonList("v1"));
+		assertEquals(OBJECT_MAPPER.readTree("{\"name\": \"app\", \"clusters\": [\"c1\"], \"applications\": [\"v1\"]}"),
+		        OBJECT_MAPPER.readTree(request));
+	}
+}
@@ -0,0 +1,107 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.jenkinsci.plugins.mulemmc.MmcTopologyCache.Listing;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Cached listings of {@link MuleRest} reloaded from an {@link MmcStub} with 6 servers in 2 groups, group-0 holding
+ * servers 0, 2 and 4. The stub sends no validators, so unchanged listings are recognized by the digest of their body.
+ */
+public class MuleRestListingTest
+{
+	private MmcStub stub;
+	private MuleRest muleRest;
+	private MmcTopologyCache cache;
+
+	@Before
+	public void startStub() throws IOException
+	{
+		MmcTopologyCache.setTtlSeconds(60);
+		stub = new MmcStub(6, 2, 1);
+		stub.start();
+		muleRest = new MuleRest(stub.getUrl(), "admin", "admin");
+		cache = MmcTopologyCache.forMmc(stub.getUrl());
+		// a previous stub may have used the same port
+		cache.invalidateAll();
+	}
+
+	@After
+	public void stopStub()
+	{
+		stub.stop();
+		MmcTopologyCache.setTtlSeconds(MmcTopologyCache.DEFAULT_TTL_SECONDS);
+	}
+
+	private static final Set<String> GROUP_0_SERVERS = new TreeSet<String>(Arrays.asList("local$server-0", "local$server-2", "local$server-4"));
+
+	@Test
+	public void unchangedListingIsReused() throws Exception
+	{
+		String clusterId = muleRest.restfullyGetClusterId("cluster-0");
+
+		long notModified = cache.getNotModified();
+		cache.invalidate(Listing.CLUSTERS);
+		assertEquals(clusterId, muleRest.restfullyGetClusterId("cluster-0"));
+		assertEquals(notModified + 1, cache.getNotModified());
+	}
+
+	@Test
+	public void groupMembersAreReadFromTheGroup() throws Exception
+	{
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+		assertEquals(3, muleRest.restfullyGetServers("group-1").size());
+		assertEquals("group members are cached", GROUP_0_SERVERS, cache.get(Listing.GROUP_SERVERS, "group-0", null));
+		assertTrue(cache.isGroupServersEndpointAvailable());
+	}
+
+	@Test
+	public void groupMembersFallBackToServerScan() throws Exception
+	{
+		stub.setGroupServersEndpoint(false);
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+		assertFalse(cache.isGroupServersEndpointAvailable());
+
+		cache.invalidateAll();
+		assertTrue("a refresh tries the endpoint again", cache.isGroupServersEndpointAvailable());
+	}
+
+	@Test
+	public void staleGroupIdIsResolvedAgain() throws Exception
+	{
+		// the id group-0 had before it was recreated
+		cache.get(Listing.SERVER_GROUPS, new MmcTopologyCache.Loader<Map<String, String>>()
+		{
+			public Map<String, String> load() throws Exception
+			{
+				return Collections.singletonMap("group-0", "local$group-7");
+			}
+		});
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+		assertTrue("a 404 for a stale id says nothing about the endpoint", cache.isGroupServersEndpointAvailable());
+	}
+
+	@Test
+	public void changedListingIsReloaded() throws Exception
+	{
+		assertNull(muleRest.restfullyGetDeploymentIdByName("app"));
+
+		long notModified = cache.getNotModified();
+		String deploymentId = muleRest.restfullyCreateDeployment("group-0", "app", "local$version-0");
+		assertEquals(deploymentId, muleRest.restfullyGetDeploymentIdByName("app"));
+		assertEquals(notModified, cache.getNotModified());
+	}
+}
@@ -0,0 +1,153 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Listings read page by page from an {@link MmcStub} with 7 servers in 2 groups, group-0 holding servers 0, 2, 4
+ * and 6, against an MMC that pages and one that ignores {@code offset} and {@code limit}.
+ */
+public class MuleRestPagingTest
+{
+	private static final int PAGE_SIZE = 2;
+	private static final Set<String> GROUP_0_SERVERS = new TreeSet<String>(Arrays.asList("local$server-0", "local$server-2",
+	        "local$server-4", "local$server-6"));
+
+	private MmcStub stub;
+	private MuleRest muleRest;
+
+	@Before
+	public void startStub() throws IOException
+	{
+		MuleRest.setListingPageSize(PAGE_SIZE);
+		stub = new MmcStub(7, 2, 1);
+		stub.start();
+		muleRest = new MuleRest(stub.getUrl(), "admin", "admin");
+	}
+
+	@After
+	public void stopStub()
+	{
+		stub.stop();
+		MuleRest.setListingPageSize(0);
+	}
+
+	@Test
+	public void pagedListingsAreReadWhole() throws Exception
+	{
+		Set<String> versionIds = addVersions(5);
+
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+		assertEquals(5, muleRest.restfullyGetRepositoryVersions().size());
+		assertEquals(versionIds, deployEach(versionIds));
+	}
+
+	@Test
+	public void pagedServersListingIsReadWhole() throws Exception
+	{
+		stub.setGroupServersEndpoint(false);
+
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+	}
+
+	@Test
+	public void unpagedListingsAreReadOnce() throws Exception
+	{
+		stub.setPaging(false);
+		Set<String> versionIds = addVersions(3);
+
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+
+		long requests = stub.getRequests();
+		assertEquals(3, muleRest.restfullyGetRepositoryVersions().size());
+		assertEquals("listing longer than the limit is the whole listing", 1, stub.getRequests() - requests);
+
+		assertEquals(versionIds, deployEach(versionIds));
+	}
+
+	@Test
+	public void unpagedListingOfPageSizeEndsWithRepeatedPage() throws Exception
+	{
+		stub.setPaging(false);
+		addVersions(PAGE_SIZE);
+
+		long requests = stub.getRequests();
+		assertEquals(PAGE_SIZE, muleRest.restfullyGetRepositoryVersions().size());
+		assertEquals("second page repeats the first one", 2, stub.getRequests() - requests);
+	}
+
+	@Test
+	public void unpagedServersListingIsReadWhole() throws Exception
+	{
+		stub.setPaging(false);
+		stub.setGroupServersEndpoint(false);
+
+		assertEquals(GROUP_0_SERVERS, muleRest.restfullyGetServers("group-0"));
+	}
+
+	@Test
+	public void emptyListingsAreReadOnce() throws Exception
+	{
+		assertEmptyListings();
+	}
+
+	@Test
+	public void unpagedEmptyListingsAreReadOnce() throws Exception
+	{
+		stub.setPaging(false);
+		assertEmptyListings();
+	}
+
+	@Test
+	public void trailingWhitespaceIsReadWithTheResponse() throws Exception
+	{
+		assertTrue(MuleRest.isFullyRead(new ByteArrayInputStream(new byte[0])));
+		assertTrue(MuleRest.isFullyRead(new ByteArrayInputStream("\r\n  \n".getBytes("US-ASCII"))));
+		assertFalse("entries left", MuleRest.isFullyRead(new ByteArrayInputStream(new byte[1024])));
+	}
+
+	private void assertEmptyListings() throws Exception
+	{
+		long requests = stub.getRequests();
+		assertTrue(muleRest.restfullyGetRepositoryVersions().isEmpty());
+		assertTrue(muleRest.restfullyGetDeployedVersionIds().isEmpty());
+		assertEquals(2, stub.getRequests() - requests);
+	}
+
+	private Set<String> addVersions(int count)
+	{
+		Set<String> versionIds = new TreeSet<String>();
+		for (int i = 0; i < count; i++)
+		{
+			versionIds.add(stub.addVersion("app-" + i, "1.0." + i));
+		}
+		return versionIds;
+	}
+
+	/**
+	 * Creates one deployment per version.
+	 *
+	 * @return the deployed versions as read back from the {@code /deployments} listing
+	 */
+	private Set<String> deployEach(Set<String> versionIds) throws Exception
+	{
+		int i = 0;
+		for (String versionId : versionIds)
+		{
+			muleRest.restfullyCreateServerDeployment("app-" + i++, GROUP_0_SERVERS, Collections.singletonList(versionId));
+		}
+		return muleRest.restfullyGetDeployedVersionIds();
+	}
+}
@@ -0,0 +1,37 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URL;
+
+import org.junit.Test;
+
+/**
+ * Phases of an upload split between the master and the build agent. The MMC URL does not resolve, so every
+ * phase that would contact MMC fails.
+ */
+public class MuleRestUploadTest
+{
+	private final URL mmcUrl;
+	private final MuleRest muleRest;
+
+	public MuleRestUploadTest() throws Exception {
+		mmcUrl = new URL("http://mmc.invalid:8080/mmc/api");
+		muleRest = new MuleRest(mmcUrl, "deployer", "secret");
+	}
+
+	@Test
+	public void releaseWithoutDigestIsUploadedWithoutLookup() throws Exception
+	{
+		assertNull(muleRest.prepareUpload("app", "1.0", null));
+	}
+
+	@Test
+	public void agentGetsTheCredentials()
+	{
+		assertEquals(mmcUrl, muleRest.getMmcUrl());
+		assertEquals("deployer", muleRest.getUsername());
+		assertEquals("secret", muleRest.getPassword());
+	}
+}
@@ -0,0 +1,28 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ * Line prefixing of {@link PrefixedPrintStream}.
+ */
+public class PrefixedPrintStreamTest
+{
+	@Test
+	public void everyLineIsPrefixed() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream logger = new PrefixedPrintStream(new PrintStream(out, true, "UTF-8"), "[app] ");
+
+		logger.println("first");
+		logger.println((Object) Integer.valueOf(2));
+		logger.flush();
+
+		String separator = System.getProperty("line.separator");
+		assertEquals("[app] first" + separator + "[app] 2" + separator, out.toString("UTF-8"));
+	}
+}
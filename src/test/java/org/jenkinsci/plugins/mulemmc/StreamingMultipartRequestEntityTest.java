@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.commons.httpclient.methods.multipart.ByteArrayPartSource;
+import org.apache.commons.httpclient.methods.multipart.FilePart;
+import org.apache.commons.httpclient.methods.multipart.Part;
+import org.apache.commons.httpclient.methods.multipart.StringPart;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.junit.Test;
+
+/**
+ * Buffering and progress reporting of {@link StreamingMultipartRequestEntity}.
+ */
+public class StreamingMultipartRequestEntityTest
+{
+	/**
+	 * Keeps the last progress reported.
+	 */
+	private static class RecordingListener implements UploadProgressListener
+	{
+		private int progressCalls;
+		private long lastSent;
+		private long lastTotal;
+		private long finishedBytes = -1;
+
+		public void progress(long bytesSent, long totalBytes, long elapsedMillis)
+		{
+			assertTrue("progress never goes back", bytesSent >= lastSent);
+			progressCalls++;
+			lastSent = bytesSent;
+			lastTotal = totalBytes;
+		}
+
+		public void finished(long bytesSent, long elapsedMillis)
+		{
+			finishedBytes = bytesSent;
+		}
+	}
+
+	private static Part[] parts()
+	{
+		byte[] archive = new byte[3 * StreamingMultipartRequestEntity.BUFFER_SIZE + 17];
+		return new Part[] { new StringPart("name", "app"), new StringPart("version", "1.0"),
+		        new FilePart("file", new ByteArrayPartSource("app.zip", archive)) };
+	}
+
+	@Test
+	public void reportsEveryByteSent() throws Exception
+	{
+		RecordingListener listener = new RecordingListener();
+		StreamingMultipartRequestEntity entity = new StreamingMultipartRequestEntity(parts(), new HttpMethodParams(), false, listener);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		entity.writeRequest(out);
+		assertEquals(entity.getContentLength(), out.size());
+		assertEquals(out.size(), listener.finishedBytes);
+		assertEquals(out.size(), listener.lastSent);
+		assertEquals(out.size(), listener.lastTotal);
+		assertTrue("progress is reported per buffer, not per byte", listener.progressCalls <= 5);
+	}
+
+	@Test
+	public void chunkedBodyHasNoLength() throws Exception
+	{
+		RecordingListener listener = new RecordingListener();
+		StreamingMultipartRequestEntity entity = new StreamingMultipartRequestEntity(parts(), new HttpMethodParams(), true, listener);
+		assertEquals(-1, entity.getContentLength());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeRequest(out);
+		assertEquals("the progress still knows the size", out.size(), listener.lastTotal);
+	}
+}
@@ -0,0 +1,78 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Digests and persistence of {@link UploadLedger}.
+ */
+public class UploadLedgerTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sha256OfFile() throws Exception
+	{
+		File archive = folder.newFile("app.zip");
+		OutputStream out = new FileOutputStream(archive);
+		try
+		{
+			out.write("abc".getBytes("US-ASCII"));
+		} finally
+		{
+			out.close();
+		}
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", UploadLedger.sha256(archive));
+	}
+
+	@Test
+	public void recordedUploadIsUnchangedAfterReload() throws Exception
+	{
+		File file = new File(folder.getRoot(), "ledger.properties");
+		URL mmcUrl = new URL("http://mmc.invalid:8080/mmc/api");
+		new UploadLedger(file).record(mmcUrl, "app", "1.0", "d1", "v1");
+
+		UploadLedger ledger = new UploadLedger(file);
+		assertTrue(ledger.isUnchanged(mmcUrl, "app", "1.0", "d1", "v1"));
+		assertFalse("other archive", ledger.isUnchanged(mmcUrl, "app", "1.0", "d2", "v1"));
+		assertFalse("version deleted and uploaded again", ledger.isUnchanged(mmcUrl, "app", "1.0", "d1", "v2"));
+		assertFalse("version not in MMC", ledger.isUnchanged(mmcUrl, "app", "1.0", "d1", null));
+		assertFalse(ledger.isUnchanged(mmcUrl, "app", "1.1", "d1", "v1"));
+		assertFalse(ledger.isUnchanged(new URL("http://other.invalid:8080/mmc/api"), "app", "1.0", "d1", "v1"));
+	}
+
+	@Test
+	public void uploadsRecordedLongestAgoAreDropped() throws Exception
+	{
+		File file = new File(folder.getRoot(), "ledger.properties");
+		URL mmcUrl = new URL("http://mmc.invalid:8080/mmc/api");
+		UploadLedger ledger = new UploadLedger(file, 2);
+		ledger.record(mmcUrl, "app", "1.0", "d1", "v1");
+		ledger.record(mmcUrl, "app", "1.1", "d2", "v2");
+		ledger.record(mmcUrl, "app", "1.0", "d1", "v1");
+		ledger.record(mmcUrl, "app", "1.2", "d3", "v3");
+
+		UploadLedger reloaded = new UploadLedger(file, 2);
+		assertTrue("recorded again", reloaded.isUnchanged(mmcUrl, "app", "1.0", "d1", "v1"));
+		assertFalse(reloaded.isUnchanged(mmcUrl, "app", "1.1", "d2", "v2"));
+		assertTrue(reloaded.isUnchanged(mmcUrl, "app", "1.2", "d3", "v3"));
+	}
+
+	@Test
+	public void unreadableLedgerStartsEmpty() throws Exception
+	{
+		UploadLedger ledger = new UploadLedger(folder.newFolder("not-a-file"));
+		assertFalse(ledger.isUnchanged(new URL("http://mmc.invalid:8080/mmc/api"), "app", "1.0", "d1", "v1"));
+	}
+}
@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.mulemmc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+/**
+ * Build log lines and throughput of {@link UploadProgress}.
+ */
+public class UploadProgressTest
+{
+	private static final long MB = 1024 * 1024;
+
+	@Test
+	public void throughput()
+	{
+		assertEquals(2.0, UploadProgress.megabytesPerSecond(4 * MB, 2000), 0.001);
+		assertEquals("no division by zero", 0.0, UploadProgress.megabytesPerSecond(MB, 0), 0.0);
+	}
+
+	@Test
+	public void reportsAtIntervals() throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		UploadProgress progress = new UploadProgress(new PrintStream(out, true, "UTF-8"));
+
+		progress.progress(MB, 10 * MB, 1000);
+		assertEquals("nothing before the first interval", 0, out.size());
+		progress.progress(5 * MB, 10 * MB, 5000);
+		progress.progress(6 * MB, 10 * MB, 6000);
+		progress.finished(10 * MB, 10000);
+
+		String[] lines = out.toString("UTF-8").split("\r?\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0], lines[0].contains("(50%)") && lines[0].contains("ETA 5s"));
+		assertTrue(lines[1], lines[1].startsWith("....upload finished"));
+		assertEquals(10 * MB, progress.getBytesSent());
+		assertEquals(1.0, progress.getMegabytesPerSecond(), 0.001);
+	}
+}